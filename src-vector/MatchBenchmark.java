@@ -0,0 +1,95 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * Compares the scalar and the vector pattern matcher on the same random boards. Run with
+ * --add-modules jdk.incubator.vector; without the module only the scalar matcher is measured.
+ */
+public class MatchBenchmark {
+    private static final SjoerdsGomokuPlayer.IO IO =
+            new SjoerdsGomokuPlayer.IO(null, null, new PrintStream(OutputStream.nullOutputStream()), false);
+
+    private static final int BOARDS = 64;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 10;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        final GenPatterns.Patterns patterns = GenPatterns.getPatterns().bucketed();
+        final SjoerdsGomokuPlayer.Board[] boards = randomBoards();
+
+        final BiFunction<SjoerdsGomokuPlayer.Board, GenPatterns.Patterns, int[][]> scalar = GenPatterns::match;
+        final BiFunction<SjoerdsGomokuPlayer.Board, GenPatterns.Patterns, int[][]> vector = vectorMatcher();
+
+        if (vector != null) {
+            for (SjoerdsGomokuPlayer.Board board : boards) {
+                if (!Arrays.deepEquals(scalar.apply(board, patterns), vector.apply(board, patterns))) {
+                    throw new AssertionError("Vector matcher disagrees with scalar matcher");
+                }
+            }
+        }
+
+        System.out.printf("scalar: %.2f us per match%n", measure(scalar, patterns, boards));
+        if (vector != null) {
+            System.out.printf("vector: %.2f us per match%n", measure(vector, patterns, boards));
+        } else {
+            System.out.println("vector: not available, run with --add-modules jdk.incubator.vector");
+        }
+    }
+
+    private static BiFunction<SjoerdsGomokuPlayer.Board, GenPatterns.Patterns, int[][]> vectorMatcher() {
+        try {
+            if (!VectorPatternMatcher.isSupported()) {
+                System.out.println("No 256-bit vectors on this platform, vector matcher runs scalar code");
+            }
+            return VectorPatternMatcher::match;
+        } catch (NoClassDefFoundError e) {
+            return null;
+        }
+    }
+
+    private static double measure(final BiFunction<SjoerdsGomokuPlayer.Board, GenPatterns.Patterns, int[][]> matcher,
+            final GenPatterns.Patterns patterns, final SjoerdsGomokuPlayer.Board[] boards) {
+        long sink = 0;
+        double best = Double.MAX_VALUE;
+
+        for (int round = 0; round < WARM_UP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long matches = 0;
+            final long start = System.nanoTime();
+            long now = start;
+            while (now - start < ROUND_NANOS) {
+                for (SjoerdsGomokuPlayer.Board board : boards) {
+                    sink += matcher.apply(board, patterns)[0][(int) (matches & 255)];
+                    matches++;
+                }
+                now = System.nanoTime();
+            }
+
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, (now - start) / 1000.0D / matches);
+            }
+        }
+
+        if (sink == 42) System.out.println(); // Keep the results alive
+        return best;
+    }
+
+    private static SjoerdsGomokuPlayer.Board[] randomBoards() {
+        final Random random = new Random(2020);
+        final SjoerdsGomokuPlayer.Board[] boards = new SjoerdsGomokuPlayer.Board[BOARDS];
+
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new SjoerdsGomokuPlayer.Board();
+            final int stones = 3 + (i % 16) * 4;
+            while (boards[i].moves < stones) {
+                final SjoerdsGomokuPlayer.Move move = IO.moveConverter.toMove(random.nextInt(256));
+                if (boards[i].validMove(move)) boards[i].apply(move);
+            }
+        }
+
+        return boards;
+    }
+}
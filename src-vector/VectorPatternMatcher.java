@@ -0,0 +1,71 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Pattern matcher that does the three four-word mask tests of GenPatterns.match() as single 256-bit vector
+ * operations. Needs the jdk.incubator.vector module; falls back to the scalar matcher when the platform has no 256-bit
+ * long vectors.
+ */
+final class VectorPatternMatcher {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_256;
+    private static final int PLAYER = 0;
+    private static final int OPPONENT = 1;
+
+    static boolean isSupported() {
+        return LongVector.SPECIES_PREFERRED.vectorBitSize() >= SPECIES.vectorBitSize();
+    }
+
+    static int[][] match(final SjoerdsGomokuPlayer.Board board, final GenPatterns.Patterns patterns) {
+        if (!isSupported()) {
+            return GenPatterns.match(board, patterns);
+        }
+
+        int[][] matchInfo = new int[2][256];
+
+        final LongVector playerStonesVector = LongVector.fromArray(SPECIES, board.playerStones(), 0);
+        final LongVector opponentStonesVector = LongVector.fromArray(SPECIES, board.opponentStones(), 0);
+        final LongVector occFlds = playerStonesVector.or(opponentStonesVector);
+        final LongVector nPS = playerStonesVector.not();
+        final LongVector nOS = opponentStonesVector.not();
+
+        final long[] emptyFields = patterns.emptyFields;
+        final long[] playerStones = patterns.playerStones;
+        final int[] moveOffsets = patterns.moveOffsets;
+        final int[] moves = patterns.moves;
+        final int[] moveTypes = patterns.moveTypes;
+        final int[] bucketOffsets = patterns.bucketOffsets;
+        final int[] playerInfo = matchInfo[PLAYER];
+        final int[] opponentInfo = matchInfo[OPPONENT];
+
+        for (int word = 0; word < 4; word++) {
+            long remaining = board.playerStones(word) | board.opponentStones(word);
+            while (remaining != 0) {
+                final int bit = Long.numberOfLeadingZeros(remaining);
+                remaining &= ~(Long.MIN_VALUE >>> bit);
+                final int anchor = 64 * word + bit;
+
+                for (int p = bucketOffsets[anchor], w = 4 * p; p < bucketOffsets[anchor + 1]; p++, w += 4) {
+                    final LongVector empty = LongVector.fromArray(SPECIES, emptyFields, w);
+                    if (occFlds.and(empty).compare(VectorOperators.NE, 0).anyTrue()) {
+                        continue;
+                    }
+
+                    final LongVector stones = LongVector.fromArray(SPECIES, playerStones, w);
+
+                    if (!nPS.and(stones).compare(VectorOperators.NE, 0).anyTrue()) {
+                        for (int m = moveOffsets[p]; m < moveOffsets[p + 1]; m++)
+                            playerInfo[moves[m]] |= moveTypes[m];
+                    }
+
+                    if (!nOS.and(stones).compare(VectorOperators.NE, 0).anyTrue()) {
+                        for (int m = moveOffsets[p]; m < moveOffsets[p + 1]; m++)
+                            opponentInfo[moves[m]] |= moveTypes[m];
+                    }
+                }
+            }
+        }
+
+        return matchInfo;
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only file with the progress of an opening book search, so a crashed or killed GenOpeningBook run resumes
+ * where it was. After every finished search depth of a task (one opening), the positions that got their moves or a
+ * deeper search since the last checkpoint are appended, followed by a record that the task finished that depth.
+ * <p>
+ * A record cut short by a crash is dropped on reading. Where a position is in the file more than once, the deepest
+ * search wins, as in GenOpeningBook.merge.
+ * <p>
+ * The file starts with a key of the search that wrote it: its width and a hash of the classes that search and
+ * evaluate. A checkpoint with another key is refused rather than resumed, as its positions would mix with ones the
+ * new search scores differently. The maximum depth is not part of the key; the file is written per finished depth,
+ * so a deeper run simply goes on from it.
+ */
+public class BookCheckpoint implements Closeable {
+    static final String DIR_PROPERTY = "gomoku.checkpoints";
+
+    private static final byte HEADER = 'H';
+    private static final byte POSITION = 'P';
+    private static final byte DEPTH_DONE = 'D';
+
+    // Every position read back, with its moves complete
+    final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> calcCache = new HashMap<>();
+    private final Map<String, Integer> depthsDone = new HashMap<>();
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+
+    private BookCheckpoint(final Path path, final String key) throws IOException {
+        if (Files.exists(path)) read(path, key);
+
+        file = new FileOutputStream(path.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(file));
+
+        if (file.getChannel().size() == 0) {
+            out.writeByte(HEADER);
+            out.writeUTF(key);
+            out.flush();
+        }
+    }
+
+    /**
+     * Opens the checkpoint with the given name in the directory of system property gomoku.checkpoints, default
+     * book-checkpoints, creating it if needed, for a search of the given width.
+     */
+    static BookCheckpoint open(final String name, final int searchWidth) throws IOException {
+        return open(Paths.get(System.getProperty(DIR_PROPERTY, "book-checkpoints")), name, searchWidth);
+    }
+
+    static BookCheckpoint open(final Path dir, final String name, final int searchWidth) throws IOException {
+        Files.createDirectories(dir);
+
+        final BookCheckpoint checkpoint = new BookCheckpoint(dir.resolve(name + ".ckpt"), key(searchWidth));
+        System.out.printf("Checkpoint %s: %d positions, tasks done %s%n", name, checkpoint.calcCache.size(),
+                checkpoint.depthsDone);
+        return checkpoint;
+    }
+
+    /**
+     * The key of a search of the given width with the current build, which PatternMatchMoveGenerator.searchCrc32()
+     * tells apart.
+     */
+    static String key(final int searchWidth) throws IOException {
+        return String.format("width %d, search %08x", searchWidth,
+                SjoerdsGomokuPlayer.PatternMatchMoveGenerator.searchCrc32());
+    }
+
+    /**
+     * The depth up to which the task has been searched already; 0 if it hasn't.
+     */
+    synchronized int depthDone(final String task) {
+        return depthsDone.getOrDefault(task, 0);
+    }
+
+    /**
+     * Appends the positions in calcCache that are not in the file yet at their current search depth, and records
+     * that the task finished the depth. written tracks, per calcCache, the depth each position was appended at.
+     */
+    synchronized void write(final String task, final int depth,
+            final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> calcCache,
+            final Map<SjoerdsGomokuPlayer.Board, Integer> written) throws IOException {
+        int count = 0;
+        for (Map.Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> entry : calcCache.entrySet()) {
+            final SjoerdsGomokuPlayer.CalcResult calcResult = entry.getValue();
+            if (calcResult.moves == null) continue;
+
+            final Integer writtenDepth = written.get(entry.getKey());
+            if (writtenDepth != null && writtenDepth >= calcResult.searchDepth) continue;
+
+            writePosition(entry.getKey(), calcResult);
+            written.put(entry.getKey(), calcResult.searchDepth);
+            count++;
+        }
+
+        out.writeByte(DEPTH_DONE);
+        out.writeUTF(task);
+        out.writeInt(depth);
+        out.flush();
+        file.getFD().sync();
+
+        depthsDone.put(task, depth);
+        System.out.printf("Checkpoint %s depth %d: %d positions written%n", task, depth, count);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writePosition(final SjoerdsGomokuPlayer.Board board, final SjoerdsGomokuPlayer.CalcResult calcResult)
+            throws IOException {
+        out.writeByte(POSITION);
+        out.writeInt(board.playerToMove);
+        out.writeInt(board.moves);
+        for (int i = 0; i < 4; i++) out.writeLong(board.playerStones(i));
+        for (int i = 0; i < 4; i++) out.writeLong(board.opponentStones(i));
+
+        out.writeInt(calcResult.ownScore);
+        out.writeInt(calcResult.bestMove);
+        out.writeInt(calcResult.searchDepth);
+        out.writeInt(calcResult.moves.length);
+        for (int mv : calcResult.moves) out.writeInt(mv);
+    }
+
+    /**
+     * Reads the complete records, and cuts off a record the crash left half written so appending can go on.
+     */
+    private void read(final Path path, final String key) throws IOException {
+        final byte[] bytes = Files.readAllBytes(path);
+        final ByteArrayInputStream bytesIn = new ByteArrayInputStream(bytes);
+        final DataInputStream in = new DataInputStream(bytesIn);
+
+        int complete = 0;
+        try {
+            while (bytesIn.available() > 0) {
+                final byte type = in.readByte();
+                if (complete == 0 && type != HEADER) {
+                    throw new IOException("Checkpoint " + path + " has no key; delete it to start over");
+                }
+
+                if (type == HEADER) {
+                    final String fileKey = in.readUTF();
+                    if (!fileKey.equals(key)) {
+                        throw new IOException(String.format("Checkpoint %s is of another search (%s), not of this one " +
+                                "(%s); delete it to start over", path, fileKey, key));
+                    }
+                } else if (type == POSITION) {
+                    readPosition(in);
+                } else if (type == DEPTH_DONE) {
+                    final String task = in.readUTF();
+                    depthsDone.put(task, in.readInt());
+                } else {
+                    throw new IOException("Corrupt checkpoint " + path + ": record type " + type);
+                }
+                complete = bytes.length - bytesIn.available();
+            }
+        } catch (EOFException e) {
+            System.out.printf("Checkpoint %s: dropping %d bytes of an unfinished record%n", path,
+                    bytes.length - complete);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+    }
+
+    private void readPosition(final DataInputStream in) throws IOException {
+        final SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+        board.playerToMove = in.readInt();
+        board.moves = in.readInt();
+        for (int i = 0; i < 4; i++) board.setPlayerStones(i, in.readLong());
+        for (int i = 0; i < 4; i++) board.setOpponentStones(i, in.readLong());
+
+        final SjoerdsGomokuPlayer.CalcResult calcResult = new SjoerdsGomokuPlayer.CalcResult();
+        calcResult.ownScore = in.readInt();
+        calcResult.evaluated = true;
+        calcResult.bestMove = in.readInt();
+        calcResult.searchDepth = in.readInt();
+        calcResult.moves = new int[in.readInt()];
+        for (int i = 0; i < calcResult.moves.length; i++) calcResult.moves[i] = in.readInt();
+
+        calcCache.merge(board, calcResult, GenOpeningBook::deepest);
+    }
+}
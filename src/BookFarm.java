@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Builds the opening books on several local JVMs, so each has a heap of its own. The coordinator puts the work units
+ * in a queue directory and starts the workers. The own opening book is the large search, so it is split: one unit
+ * searches its root a single ply deep, and one unit per reply the root tries searches the rest of that subtree. The
+ * other openings are a unit each. A worker claims a unit by renaming its file from
+ * queue/ into claimed/, which only one of them can do, and moves it on to done/ when finished. Each unit's positions
+ * go to its own shard, a BookCheckpoint in shards/, so a unit that was cut off resumes from there. EncodeData merges
+ * the shards when given the farm directory; where shards share a position, the deepest search of it wins. The
+ * subtrees are searched without the bounds their siblings would have given them, so the farm searches more positions
+ * than one search of the book does, and its book has more of them.
+ * <p>
+ * Usage: BookFarm coordinate &lt;dir&gt; [workers] [-Xmx...] or BookFarm work &lt;dir&gt;.
+ */
+public class BookFarm {
+    private static final String OWN_PLAYER = "own-player";
+    private static final String OWN_OPPONENT = "own-opponent";
+    private static final String OTHER_PREFIX = "other-";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Path dir = Paths.get(args[1]);
+
+        switch (args[0]) {
+        case "coordinate":
+            final int workers = args.length > 2 ? Integer.parseInt(args[2]) :
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            final String maxHeap = args.length > 3 ? args[3] : null;
+            coordinate(dir, workers, maxHeap);
+            break;
+        case "work":
+            work(dir);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown command " + args[0]);
+        }
+    }
+
+    private static void coordinate(final Path dir, final int workers, final String maxHeap)
+            throws IOException, InterruptedException {
+        Files.createDirectories(dir.resolve("queue"));
+        Files.createDirectories(dir.resolve("claimed"));
+        Files.createDirectories(dir.resolve("done"));
+
+        // Claims left by workers of an earlier run are stale; their shards tell how far they got
+        for (String unit : list(dir.resolve("claimed"))) {
+            Files.move(dir.resolve("claimed").resolve(unit), dir.resolve("queue").resolve(unit));
+        }
+
+        if (list(dir.resolve("queue")).isEmpty() && list(dir.resolve("done")).isEmpty()) {
+            for (String unit : units()) {
+                Files.createFile(dir.resolve("queue").resolve(unit));
+            }
+        }
+
+        System.out.printf("Units queued: %d, done: %d; starting %d workers%n", list(dir.resolve("queue")).size(),
+                list(dir.resolve("done")).size(), workers);
+
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            final List<String> command = new ArrayList<>();
+            command.add(java);
+            if (maxHeap != null) command.add(maxHeap);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(BookFarm.class.getName());
+            command.add("work");
+            command.add(dir.toString());
+
+            processes.add(new ProcessBuilder(command)
+                    .redirectOutput(dir.resolve("worker-" + i + ".log").toFile())
+                    .redirectErrorStream(true)
+                    .start());
+        }
+
+        int failed = 0;
+        for (Process process : processes) {
+            if (process.waitFor() != 0) failed++;
+        }
+
+        System.out.printf("Workers done, %d failed; units left: %d%n", failed,
+                list(dir.resolve("queue")).size() + list(dir.resolve("claimed")).size());
+    }
+
+    private static void work(final Path dir) throws IOException {
+        final String worker = ManagementFactory.getRuntimeMXBean().getName();
+
+        for (String unit : list(dir.resolve("queue"))) {
+            final Path claimed = dir.resolve("claimed").resolve(unit);
+            try {
+                Files.move(dir.resolve("queue").resolve(unit), claimed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                continue; // Another worker was first
+            } catch (AtomicMoveNotSupportedException e) {
+                throw new IOException("The farm directory must support atomic renames", e);
+            }
+
+            System.out.printf("%s: working on %s%n", worker, unit);
+            run(dir, unit);
+            Files.move(claimed, dir.resolve("done").resolve(unit), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static void run(final Path dir, final String unit) throws IOException {
+        try (BookCheckpoint shard = BookCheckpoint.open(dir.resolve("shards"), unit, searchWidth(unit))) {
+            if (unit.equals(OWN_PLAYER) || unit.equals(OWN_OPPONENT)) {
+                new GenOpeningBook.Worker(1, GenOpeningBook.OWN_SEARCH_WIDTH, shard).addOpening(playerToMove(unit));
+            } else if (unit.startsWith(OWN_PLAYER) || unit.startsWith(OWN_OPPONENT)) {
+                final String reply = unit.substring(unit.length() - 2);
+                new GenOpeningBook.Worker(GenOpeningBook.OWN_MAX_DEPTH - 1, GenOpeningBook.OWN_SEARCH_WIDTH, shard)
+                        .addReply(playerToMove(unit),
+                                SjoerdsGomokuPlayer.MoveConverter.toFieldIdx(reply.charAt(0), reply.charAt(1)));
+            } else {
+                final String name = unit.substring(OTHER_PREFIX.length());
+                new GenOpeningBook.Worker(GenOpeningBook.OTHER_MAX_DEPTH, GenOpeningBook.OTHER_SEARCH_WIDTH, shard)
+                        .decideSwitch(GenOpeningBook.toOpening(name.substring(0, 2), name.substring(2, 4),
+                                name.substring(4, 6)));
+            }
+        }
+    }
+
+    private static int searchWidth(final String unit) {
+        return unit.startsWith(OTHER_PREFIX) ? GenOpeningBook.OTHER_SEARCH_WIDTH : GenOpeningBook.OWN_SEARCH_WIDTH;
+    }
+
+    private static int playerToMove(final String unit) {
+        return unit.startsWith(OWN_PLAYER) ? SjoerdsGomokuPlayer.Board.PLAYER : SjoerdsGomokuPlayer.Board.OPPONENT;
+    }
+
+    /**
+     * The own opening's units with playerToMove to move: its root, then a unit per reply, e.g. own-player-Hi.
+     */
+    private static List<String> ownUnits(final String root, final int playerToMove) {
+        final List<String> units = new ArrayList<>();
+        units.add(root);
+        for (int reply : GenOpeningBook.ownReplies(playerToMove)) {
+            units.add(root + "-" + SjoerdsGomokuPlayer.MoveConverter.toString(reply));
+        }
+        return units;
+    }
+
+    private static List<String> units() {
+        final List<String> units = new ArrayList<>();
+        units.addAll(ownUnits(OWN_PLAYER, SjoerdsGomokuPlayer.Board.PLAYER));
+        units.addAll(ownUnits(OWN_OPPONENT, SjoerdsGomokuPlayer.Board.OPPONENT));
+        for (SjoerdsGomokuPlayer.Move[] opening : GenOpeningBook.OTHER_OPENINGS) {
+            units.add(OTHER_PREFIX + GenOpeningBook.name(opening));
+        }
+        return units;
+    }
+
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOwnOpeningBook(final Path dir)
+            throws IOException {
+        return GenOpeningBook.combineOwnOpeningBook(
+                readShards(dir, ownUnits(OWN_PLAYER, SjoerdsGomokuPlayer.Board.PLAYER)),
+                readShards(dir, ownUnits(OWN_OPPONENT, SjoerdsGomokuPlayer.Board.OPPONENT)));
+    }
+
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOtherOpeningBooks(final Path dir)
+            throws IOException {
+        final List<String> units = new ArrayList<>();
+        for (SjoerdsGomokuPlayer.Move[] opening : GenOpeningBook.OTHER_OPENINGS) {
+            units.add(OTHER_PREFIX + GenOpeningBook.name(opening));
+        }
+        return readShards(dir, units);
+    }
+
+    private static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> readShards(final Path dir,
+            final List<String> units) throws IOException {
+        final List<Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult>> shards = new ArrayList<>();
+        for (String unit : units) {
+            shards.add(readShard(dir, unit));
+        }
+        return GenOpeningBook.merge(shards);
+    }
+
+    private static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> readShard(final Path dir,
+            final String unit) throws IOException {
+        if (!Files.exists(dir.resolve("done").resolve(unit))) {
+            throw new IllegalStateException("Unit " + unit + " of farm " + dir + " is not done");
+        }
+
+        try (BookCheckpoint shard = BookCheckpoint.open(dir.resolve("shards"), unit, searchWidth(unit))) {
+            return shard.calcCache;
+        }
+    }
+
+    private static List<String> list(final Path dir) throws IOException {
+        final TreeSet<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(path -> names.add(path.getFileName().toString()));
+        }
+        return new ArrayList<>(names);
+    }
+}
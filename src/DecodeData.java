@@ -0,0 +1,45 @@
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+
+/**
+ * Writes the embedded Data sections, already Base64-decoded and inflated, to a side file. Start the player with
+ * -Dgomoku.data=&lt;file&gt; to have it memory-map the tables instead of decoding the Data strings on every launch.
+ */
+public class DecodeData {
+    public static void main(String[] args) throws IOException, DataFormatException {
+        final String fileName = args.length > 0 ? args[0] : "SjoerdsGomokuPlayer.data";
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
+            out.writeInt(SjoerdsGomokuPlayer.DataReader.SIDE_FILE_MAGIC);
+            out.writeInt(SjoerdsGomokuPlayer.DataReader.SECTIONS.length);
+
+            for (String section : SjoerdsGomokuPlayer.DataReader.SECTIONS) {
+                final byte[] bytes = decode(section);
+                final byte[] name = section.getBytes(StandardCharsets.US_ASCII);
+
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+
+                System.out.printf("%s: %d bytes%n", section, bytes.length);
+            }
+        }
+
+        System.out.println("Written " + fileName);
+    }
+
+    private static byte[] decode(final String section) throws DataFormatException {
+        final ByteBuffer buffer = SjoerdsGomokuPlayer.DataReader.uncompress(
+                SjoerdsGomokuPlayer.DataReader.embedded(section),
+                SjoerdsGomokuPlayer.DataReader.uncompressedSize(section));
+
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
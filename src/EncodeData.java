@@ -1,28 +1,26 @@
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 
 public class EncodeData {
     private static final int MAX_SIZE_STRING_CONSTANT = 65535;
 
-    public static void main(String[] args) throws DataFormatException {
-        SjoerdsGomokuPlayer.Patterns patterns = GenPatterns.getPatterns();
-        byte[] patternsBytes = serializePatterns(patterns);
-        String patternsString = toUsableString(patternsBytes);
+    public static void main(String[] args)
+            throws DataFormatException, IOException, InterruptedException, ExecutionException {
+        // With a BookFarm directory, the books come from its shards instead of being searched here
+        final Path farm = args.length > 0 ? Paths.get(args[0]) : null;
 
-        SjoerdsGomokuPlayer.Patterns verifyPatterns = SjoerdsGomokuPlayer.DataReader.deserializePatterns(patternsString, patternsBytes.length);
-        verifyEquals(patterns, verifyPatterns);
-
-        Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> ownOpeningBook = GenOpeningBook.getOwnOpeningBook();
+        Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> ownOpeningBook =
+                farm != null ? BookFarm.getOwnOpeningBook(farm) : GenOpeningBook.getOwnOpeningBook();
         byte[] ownOpeningBookBytes = GenOpeningBook.serializeCalcCache(ownOpeningBook);
         String ownOpeningBookString = toUsableString(ownOpeningBookBytes);
 
@@ -31,7 +29,7 @@ public class EncodeData {
         GenOpeningBook.verifyEquals(ownOpeningBook, verifyOwnOpeningBook);
 
         Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> otherOpeningBooks =
-                GenOpeningBook.getOtherOpeningBooks();
+                farm != null ? BookFarm.getOtherOpeningBooks(farm) : GenOpeningBook.getOtherOpeningBooks();
         byte[] otherOpeningBooksBytes = GenOpeningBook.serializeCalcCache(otherOpeningBooks);
         String otherOpeningBooksString = toUsableString(otherOpeningBooksBytes);
         final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> verifyOtherOpeningBooks = new HashMap<>();
@@ -39,14 +37,19 @@ public class EncodeData {
                 otherOpeningBooksBytes.length);
         GenOpeningBook.verifyEquals(otherOpeningBooks, verifyOtherOpeningBooks);
 
+        // Generated apart, as its search takes far longer than the rest; deserializing fails on a file that isn't one
+        byte[] swapTableBytes = GenSwapTable.readSwapTable();
+        String swapTableString = toUsableString(swapTableBytes);
+        SjoerdsGomokuPlayer.DataReader.deserializeSwapTable(swapTableString, swapTableBytes.length);
+
         StringBuilder sb = new StringBuilder();
         sb.append("@SuppressWarnings(\"StringBufferReplaceableByString\") // They really can't be replaced by Strings.")
                 .append(System.lineSeparator())
                 .append("static final class Data {")
                 .append(System.lineSeparator());
-        printData(sb, "PATTERNS", patternsBytes.length, patternsString);
-        printData(sb, "OWN_OPENING_BOOK", ownOpeningBookBytes.length, ownOpeningBookString);
-        printData(sb, "OTHER_OPENING_BOOKS", otherOpeningBooksBytes.length, otherOpeningBooksString);
+        printData(sb, "OWN_OPENING_BOOK", ownOpeningBookBytes, ownOpeningBookString);
+        printData(sb, "OTHER_OPENING_BOOKS", otherOpeningBooksBytes, otherOpeningBooksString);
+        printData(sb, "SWAP_TABLE", swapTableBytes, swapTableString);
         sb.append("}")
                 .append(System.lineSeparator());
 
@@ -59,13 +62,19 @@ public class EncodeData {
         }
     }
 
-    private static void printData(final StringBuilder sb, final String name, final int length, final String string) {
+    static void printData(final StringBuilder sb, final String name, final byte[] bytes, final String string) {
         sb.append("static final int ")
                 .append(name)
                 .append("_UNCOMPRESSED_SIZE = ")
-                .append(length)
+                .append(bytes.length)
                 .append(";")
                 .append(System.lineSeparator())
+                .append("static final long ")
+                .append(name)
+                .append("_CRC32 = ")
+                .append(SjoerdsGomokuPlayer.DataReader.crc32(ByteBuffer.wrap(bytes)))
+                .append("L;")
+                .append(System.lineSeparator())
                 .append("static final String ")
                 .append(name)
                 .append(" = new StringBuilder()")
@@ -89,7 +98,7 @@ public class EncodeData {
     }
 
     static String toUsableString(final byte[] bytes) {
-        // Double compression shaves another 30% from final Base64 data for patterns, and 5% for the opening book.
+        // Double compression shaves another 5% from final Base64 data for the opening book.
         byte[] compressed1 = compress(bytes);
         byte[] compressed2 = compress(compressed1);
         byte[] base64 = base64(compressed2);
@@ -117,60 +126,4 @@ public class EncodeData {
 
         return Arrays.copyOf(compr, deflateLen);
     }
-
-    private static byte[] serializePatterns(final SjoerdsGomokuPlayer.Patterns patterns) {
-        List<Long> longList = new ArrayList<>();
-        List<Integer> intList = new ArrayList<>();
-
-        intList.add(patterns.allPatterns.length);
-        addPatterns(patterns.allPatterns, longList, intList);
-
-        final LongBuffer longBuffer = LongBuffer.allocate(longList.size());
-        for (Long l : longList) {
-            longBuffer.put(l);
-        }
-
-        final IntBuffer intBuffer = IntBuffer.allocate(intList.size());
-        for (Integer i : intList) {
-            intBuffer.put(i);
-        }
-
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(
-                Long.BYTES + longBuffer.capacity() * Long.BYTES + intBuffer.capacity() * Integer.BYTES);
-
-        byteBuffer.putLong(longBuffer.capacity());
-        longBuffer.rewind();
-        byteBuffer.asLongBuffer().put(longBuffer);
-        byteBuffer.position(byteBuffer.position() + longBuffer.capacity() * Long.BYTES);
-        intBuffer.rewind();
-        byteBuffer.asIntBuffer().put(intBuffer);
-
-        return byteBuffer.array();
-    }
-
-    private static void addPatterns(final SjoerdsGomokuPlayer.Pattern[] pat, final List<Long> longList,
-            final List<Integer> intList) {
-        for (SjoerdsGomokuPlayer.Pattern p : pat) {
-            for (long eF : p.emptyFields)
-                longList.add(eF);
-            for (long pS : p.playerStones)
-                longList.add(pS);
-            intList.add(p.moves.length);
-            for (int fieldIdx : p.moves)
-                intList.add(fieldIdx);
-            for (int type : p.moveTypes)
-                intList.add(type);
-        }
-    }
-
-    private static void verifyEquals(SjoerdsGomokuPlayer.Patterns p1, SjoerdsGomokuPlayer.Patterns p2) {
-        if (!Arrays.equals(p1.allPatterns, p2.allPatterns)) {
-            System.err.printf("allPatterns mismatch: %d (len %d %d)\n", Arrays.mismatch(p1.allPatterns, p2.allPatterns),
-                    p1.allPatterns.length, p2.allPatterns.length);
-
-            throw new AssertionError("Verification failed: patterns not equal");
-        } else {
-            System.out.println("Patterns deserialized correctly");
-        }
-    }
 }
@@ -1,18 +1,33 @@
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.DataFormatException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 
 public class GenOpeningBook {
     private static final SjoerdsGomokuPlayer.IO IO =
             new SjoerdsGomokuPlayer.IO(System.in, System.out, System.err, false);
 
-    public static void main(String[] args) throws DataFormatException {
+    static final int OWN_MAX_DEPTH = 6;
+    static final int OWN_SEARCH_WIDTH = 15;
+    static final int OTHER_MAX_DEPTH = 4;
+    static final int OTHER_SEARCH_WIDTH = 10;
+
+    static final List<SjoerdsGomokuPlayer.Move[]> OTHER_OPENINGS =
+            List.of(toOpening("Ig", "He", "Id"), toOpening("Hh", "Ih", "Hk"), toOpening("Hh", "Hi", "Ii"),
+                    toOpening("Oh", "Lh", "Lg"), toOpening("Kj", "Li", "Jg"), toOpening("Aa", "Pp", "Ap"),
+                    toOpening("Cc", "Cd", "Ce"), toOpening("Ae", "Be", "Ad"), toOpening("Dg", "Dh", "Ek"),
+                    toOpening("Ge", "Ig", "Il"));
+
+    public static void main(String[] args) throws IOException {
         Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> ownOpeningBook = getOwnOpeningBook();
         Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> otherOpeningBooks = getOtherOpeningBooks();
 
@@ -20,66 +35,158 @@ public class GenOpeningBook {
         System.out.println("otherOpeningBooks.size() = " + otherOpeningBooks.size());
     }
 
-    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOtherOpeningBooks() throws DataFormatException {
-        SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen =
-                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, IO.timer);
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOtherOpeningBooks() throws IOException {
+        try (BookCheckpoint checkpoint = BookCheckpoint.open("other-opening-books", OTHER_SEARCH_WIDTH)) {
+            // One worker per pool thread, each keeping its calcCache over all the openings it gets
+            final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+            final ThreadLocal<Worker> worker = ThreadLocal.withInitial(() -> {
+                Worker newWorker = new Worker(OTHER_MAX_DEPTH, OTHER_SEARCH_WIDTH, checkpoint);
+                workers.add(newWorker);
+                return newWorker;
+            });
+
+            inPool(Math.min(OTHER_OPENINGS.size(), Runtime.getRuntime().availableProcessors()),
+                    () -> OTHER_OPENINGS.parallelStream().forEach(opening -> worker.get().decideSwitch(opening)));
+
+            final List<Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult>> calcCaches = new ArrayList<>();
+            calcCaches.add(checkpoint.calcCache);
+            workers.forEach(w -> calcCaches.add(w.moveGen.calcCache));
+            return withMoves(merge(calcCaches));
+        }
+    }
+
+    /**
+     * The board after the fixed opening of our own games, with playerToMove to move.
+     */
+    static SjoerdsGomokuPlayer.Board ownOpening(final int playerToMove) {
+        final SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+        board.playerToMove = playerToMove;
+        board.apply(SjoerdsGomokuPlayer.Move.OPENING[0]);
+        board.apply(SjoerdsGomokuPlayer.Move.OPENING[1]);
+        board.apply(SjoerdsGomokuPlayer.Move.OPENING[2]);
+        return board;
+    }
+
+    /**
+     * The moves a search of the own opening tries first, best first: the first ply of its tree. A depth 1 search
+     * generates them as any deeper one does.
+     */
+    static int[] ownReplies(final int playerToMove) {
+        final SjoerdsGomokuPlayer.Timer timer = new SjoerdsGomokuPlayer.Timer(IO.dbgPrinter);
+        final SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen =
+                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, timer);
         moveGen.maxNanos *= 60 * 300;
-        moveGen.maxDepth = 4;
-        moveGen.searchWidth = 10;
+        moveGen.searchWidth = OWN_SEARCH_WIDTH;
+        moveGen.maxDepth = 1;
+        timer.timerStart = System.nanoTime();
 
-        List<SjoerdsGomokuPlayer.Move[]> openings =
-                List.of(toOpening("Ig", "He", "Id"), toOpening("Hh", "Ih", "Hk"), toOpening("Hh", "Hi", "Ii"),
-                        toOpening("Oh", "Lh", "Lg"), toOpening("Kj", "Li", "Jg"), toOpening("Aa", "Pp", "Ap"),
-                        toOpening("Cc", "Cd", "Ce"), toOpening("Ae", "Be", "Ad"), toOpening("Dg", "Dh", "Ek"),
-                        toOpening("Ge", "Ig", "Il"));
+        final SjoerdsGomokuPlayer.Board board = ownOpening(playerToMove);
+        moveGen.generateMove(board.copy());
+        return moveGen.calcCache.get(board).moves;
+    }
 
-        openings.forEach(opening -> {
-            IO.timer.totalTime = 0;
-            IO.timer.timerStart = System.nanoTime();
+    /**
+     * Merges the calcCaches of several workers. Where they share a position, the result searched deepest wins.
+     */
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> merge(
+            final List<Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult>> calcCaches) {
+        final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> merged = new HashMap<>();
+        for (Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> calcCache : calcCaches) {
+            calcCache.forEach((board, calcResult) -> merged.merge(board, calcResult, GenOpeningBook::deepest));
+        }
+        return merged;
+    }
 
-            SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
-            board.apply(opening[0]);
-            board.apply(opening[1]);
-            board.apply(opening[2]);
-            SjoerdsGomokuPlayer.Move move = moveGen.decideSwitch(board);
-        });
+    static SjoerdsGomokuPlayer.CalcResult deepest(final SjoerdsGomokuPlayer.CalcResult current,
+            final SjoerdsGomokuPlayer.CalcResult other) {
+        final SjoerdsGomokuPlayer.CalcResult deepest = other.searchDepth > current.searchDepth ? other : current;
+        final SjoerdsGomokuPlayer.CalcResult shallowest = deepest == other ? current : other;
 
-        return moveGen.calcCache;
+        // The moves only depend on the position, so a worker that cut off before generating them all can borrow them
+        if (deepest.moves == null) deepest.moves = shallowest.moves;
+        return deepest;
+    }
+
+    private static void inPool(final int parallelism, final Runnable task) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(task).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Drops the positions the search only evaluated, or cut off before generating all their moves. A book entry
+     * must have its moves complete; the player recomputes the others quickly enough. The result is a new HashMap,
+     * also when calcCache is an OffHeapCalcCache.
+     */
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> withMoves(
+            final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> calcCache) {
+        final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> withMoves = new HashMap<>();
+        calcCache.forEach((board, calcResult) -> {
+            if (calcResult.moves != null) withMoves.put(board, calcResult);
+        });
+        return withMoves;
     }
 
     static SjoerdsGomokuPlayer.Move[] toOpening(String move1, String move2, String move3) {
         return new SjoerdsGomokuPlayer.Move[]{toMove(move1), toMove(move2), toMove(move3)};
     }
 
+    /**
+     * The opening as its moves, e.g. "HhIhHk".
+     */
+    static String name(final SjoerdsGomokuPlayer.Move[] opening) {
+        return Arrays.stream(opening)
+                .map(move -> SjoerdsGomokuPlayer.MoveConverter.toString(
+                        SjoerdsGomokuPlayer.MoveConverter.toFieldIdx(move)))
+                .collect(Collectors.joining());
+    }
+
     static SjoerdsGomokuPlayer.Move toMove(String move) {
-        int row = move.charAt(0) - 'A';
-        int col = move.charAt(1) - 'a';
-        int fieldIdx = SjoerdsGomokuPlayer.MoveConverter.toFieldIdx(row, col);
+        int fieldIdx = SjoerdsGomokuPlayer.MoveConverter.toFieldIdx(move.charAt(0), move.charAt(1));
         return IO.moveConverter.toMove(fieldIdx);
     }
 
-    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOwnOpeningBook() throws DataFormatException {
-        SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen =
-                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, IO.timer);
-        moveGen.maxNanos *= 60 * 300;
-        moveGen.maxDepth = 6;
-        moveGen.searchWidth = 15;
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> getOwnOpeningBook() throws IOException {
+        final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cachePlayer;
+        final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cacheOpponent;
+
+        try (BookCheckpoint playerCheckpoint = BookCheckpoint.open("own-opening-book-player", OWN_SEARCH_WIDTH);
+             BookCheckpoint opponentCheckpoint = BookCheckpoint.open("own-opening-book-opponent", OWN_SEARCH_WIDTH)) {
+            final Worker playerWorker = new Worker(OWN_MAX_DEPTH, OWN_SEARCH_WIDTH, playerCheckpoint);
+            final Worker opponentWorker = new Worker(OWN_MAX_DEPTH, OWN_SEARCH_WIDTH, opponentCheckpoint);
 
-        addOpening(moveGen, SjoerdsGomokuPlayer.Move.OPENING, SjoerdsGomokuPlayer.Board.PLAYER);
+            inPool(2, () -> ForkJoinTask.invokeAll(
+                    ForkJoinTask.adapt(() -> playerWorker.addOpening(SjoerdsGomokuPlayer.Board.PLAYER)),
+                    ForkJoinTask.adapt(() -> opponentWorker.addOpening(SjoerdsGomokuPlayer.Board.OPPONENT))));
 
-        Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cachePlayer = moveGen.calcCache;
-        moveGen.calcCache = new HashMap<>();
+            cachePlayer = withMoves(playerWorker.moveGen.calcCache);
+            cacheOpponent = withMoves(opponentWorker.moveGen.calcCache);
+        }
 
-        addOpening(moveGen, SjoerdsGomokuPlayer.Move.OPENING, SjoerdsGomokuPlayer.Board.OPPONENT);
-        Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cacheOpponent = moveGen.calcCache;
+        return combineOwnOpeningBook(cachePlayer, cacheOpponent);
+    }
 
+    /**
+     * The own book is searched once with us on move after the opening and once with the opponent on move. The
+     * latter is flipped and added where the former doesn't have the position.
+     */
+    static Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> combineOwnOpeningBook(
+            final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cachePlayer,
+            final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cacheOpponent) {
         System.out.println("cachePlayer.size() = " + cachePlayer.size());
         System.out.println("cacheOpponent.size() = " + cacheOpponent.size());
 
         cacheOpponent.forEach((board, calcResult) -> {
-            SjoerdsGomokuPlayer.Board flip = board.copy().flip();
+            SjoerdsGomokuPlayer.Board flip = board.copy();
+            SjoerdsGomokuPlayer.CalcResult flipResult = new SjoerdsGomokuPlayer.CalcResult();
+            flipResult.ownScore = calcResult.ownScore;
+            flipResult.moves = calcResult.moves;
+            SjoerdsGomokuPlayer.DataReader.flip(flip, flipResult);
             if (!cachePlayer.containsKey(flip)) {
-                cachePlayer.put(flip, calcResult);
+                cachePlayer.put(flip, flipResult);
             }
         });
 
@@ -112,66 +219,313 @@ public class GenOpeningBook {
         System.out.println("CalcCache deserialized correctly");
     }
 
-    private static void addOpening(final SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen,
-            final SjoerdsGomokuPlayer.Move[] opening, final int playerToMove) {
-        IO.timer.totalTime = 0;
-        IO.timer.timerStart = System.nanoTime();
+    /**
+     * A move generator with its own Timer, for one pool thread. It searches one depth at a time up to maxDepth, and
+     * checkpoints after each; its calcCache starts out with what the checkpoint had. The calcCache is an
+     * OffHeapCalcCache if the system properties ask for one.
+     */
+    static final class Worker {
+        private final SjoerdsGomokuPlayer.Timer timer = new SjoerdsGomokuPlayer.Timer(IO.dbgPrinter);
+        private final SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen =
+                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, timer);
+        private final int maxDepth;
+        private final BookCheckpoint checkpoint;
+        private final Map<SjoerdsGomokuPlayer.Board, Integer> written = new HashMap<>();
+
+        Worker(final int maxDepth, final int searchWidth, final BookCheckpoint checkpoint) {
+            try {
+                final OffHeapCalcCache offHeapCalcCache = OffHeapCalcCache.fromProperties();
+                if (offHeapCalcCache != null) moveGen.calcCache = offHeapCalcCache;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
 
-        SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
-        board.playerToMove = playerToMove;
-        board.apply(opening[0]);
-        board.apply(opening[1]);
-        board.apply(opening[2]);
-        SjoerdsGomokuPlayer.Move move = moveGen.generateMove(board);
+            moveGen.maxNanos *= 60 * 300;
+            moveGen.searchWidth = searchWidth;
+            this.maxDepth = maxDepth;
+            this.checkpoint = checkpoint;
+
+            // Copies, as other workers may start from the same checkpoint
+            checkpoint.calcCache.forEach((board, calcResult) -> {
+                moveGen.calcCache.put(board, calcResult.copy());
+                written.put(board, calcResult.searchDepth);
+            });
+        }
+
+        void decideSwitch(final SjoerdsGomokuPlayer.Move[] opening) {
+            SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+            board.apply(opening[0]);
+            board.apply(opening[1]);
+            board.apply(opening[2]);
+
+            deepen(name(opening), () -> moveGen.decideSwitch(board.copy()));
+        }
+
+        void addOpening(final int playerToMove) {
+            final SjoerdsGomokuPlayer.Board board = ownOpening(playerToMove);
+
+            deepen("opening", () -> moveGen.generateMove(board.copy()));
+        }
+
+        /**
+         * Searches the own opening after one reply to it, a subtree of what addOpening searches.
+         */
+        void addReply(final int playerToMove, final int fieldIdx) {
+            final SjoerdsGomokuPlayer.Board board = ownOpening(playerToMove).apply(fieldIdx);
+
+            deepen("reply", () -> moveGen.generateMove(board.copy()));
+        }
+
+        private void deepen(final String task, final Runnable search) {
+            for (int depth = checkpoint.depthDone(task) + 1; depth <= maxDepth; depth++) {
+                timer.totalTime = 0;
+                timer.timerStart = System.nanoTime();
+                moveGen.maxDepth = depth;
+                search.run();
+
+                try {
+                    checkpoint.write(task, depth, moveGen.calcCache, written);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
     }
 
+    /**
+     * Writes the book in the column format DataReader.loadOpeningBook reads. Most positions are a position elsewhere
+     * in the book plus one stone, so only those that aren't, the roots, are written in full. The others follow in
+     * breadth-first order, children by field, and store their parent's index as a delta from the previous one and the
+     * stone's field. Each column is written on its own: roots, parent deltas, fields, ownScores as zigzag varints,
+     * and the move lists as a varint length and one byte per field.
+     */
     static byte[] serializeCalcCache(final Map<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> cache) {
-        List<Long> longList = new ArrayList<>();
-        List<Integer> intList = new ArrayList<>();
+        final int size = cache.size();
+        final SjoerdsGomokuPlayer.Board[] boards = new SjoerdsGomokuPlayer.Board[size];
+        final SjoerdsGomokuPlayer.CalcResult[] calcResults = new SjoerdsGomokuPlayer.CalcResult[size];
+        final PositionIndex positions = new PositionIndex(size);
+        for (Map.Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> entry : cache.entrySet()) {
+            boards[positions.size()] = entry.getKey();
+            calcResults[positions.size()] = entry.getValue();
+            positions.add(entry.getKey());
+        }
 
-        intList.add(cache.size());
+        // Children as (parent << 40) | (field << 32) | child, so sorting groups them by parent, ordered by field
+        final List<SjoerdsGomokuPlayer.Board> roots = new ArrayList<>();
+        final int[] parents = new int[size];
+        final int[] fields = new int[size];
+        final long[] children = new long[size];
+        int childCount = 0;
+        final long[] parent = new long[8];
+        for (int i = 0; i < size; i++) {
+            fields[i] = positions.parentField(i, parent);
+            if (fields[i] < 0) {
+                roots.add(boards[i]);
+            } else {
+                parents[i] = positions.find(~positions.playerToMove(i), parent);
+                children[childCount++] = (long) parents[i] << 40 | (long) fields[i] << 32 | i;
+            }
+        }
+        roots.sort(GenOpeningBook::compareBoards);
+        Arrays.sort(children, 0, childCount);
+
+        // Breadth-first: the roots, then the children of each position in the order they are written
+        final int[] order = new int[size];
+        final int[] index = new int[size];
+        for (int i = 0; i < roots.size(); i++) {
+            order[i] = positions.find(roots.get(i));
+        }
+        int ordered = roots.size();
+        for (int i = 0; i < ordered; i++) {
+            index[order[i]] = i;
 
-        cache.forEach((key, value) -> {
-            addBoard(key, longList, intList);
-            addCalcResult(value, intList);
-        });
+            int child = firstChild(children, childCount, order[i]);
+            while (child < childCount && (int) (children[child] >>> 40) == order[i]) {
+                order[ordered++] = (int) children[child++];
+            }
+        }
 
-        final LongBuffer longBuffer = LongBuffer.allocate(longList.size());
-        longList.forEach(longBuffer::put);
+        final ByteArrayOutputStream rootColumn = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parentColumn = new ByteArrayOutputStream();
+        final ByteArrayOutputStream fieldColumn = new ByteArrayOutputStream();
+        final ByteArrayOutputStream scoreColumn = new ByteArrayOutputStream();
+        final ByteArrayOutputStream movesColumn = new ByteArrayOutputStream();
+
+        int previousParent = 0;
+        for (int i = 0; i < ordered; i++) {
+            final int position = order[i];
+            if (i < roots.size()) {
+                final SjoerdsGomokuPlayer.Board board = boards[position];
+                rootColumn.write(board.playerToMove == SjoerdsGomokuPlayer.Board.PLAYER ? 0 : 1);
+                writeVarint(rootColumn, board.moves);
+                for (int word = 0; word < 4; word++) writeLong(rootColumn, board.playerStones(word));
+                for (int word = 0; word < 4; word++) writeLong(rootColumn, board.opponentStones(word));
+            } else {
+                writeVarint(parentColumn, index[parents[position]] - previousParent);
+                fieldColumn.write(fields[position]);
+                previousParent = index[parents[position]];
+            }
 
-        final IntBuffer intBuffer = IntBuffer.allocate(intList.size());
-        intList.forEach(intBuffer::put);
+            final SjoerdsGomokuPlayer.CalcResult calcResult = calcResults[position];
+            writeVarint(scoreColumn, calcResult.ownScore << 1 ^ calcResult.ownScore >> 31);
+            writeVarint(movesColumn, calcResult.moves.length);
+            for (int mv : calcResult.moves)
+                movesColumn.write(mv);
+        }
 
-        final ByteBuffer buffer = ByteBuffer.allocate(
-                Long.BYTES + longBuffer.capacity() * Long.BYTES + intBuffer.capacity() * Integer.BYTES);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, ordered);
+        writeVarint(out, roots.size());
+        out.writeBytes(rootColumn.toByteArray());
+        out.writeBytes(parentColumn.toByteArray());
+        out.writeBytes(fieldColumn.toByteArray());
+        out.writeBytes(scoreColumn.toByteArray());
+        out.writeBytes(movesColumn.toByteArray());
+        return out.toByteArray();
+    }
 
-        buffer.putLong(longBuffer.capacity());
+    /**
+     * The first of the sorted children with the given parent or a later one.
+     */
+    private static int firstChild(final long[] children, final int childCount, final int parent) {
+        int low = 0;
+        int high = childCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (children[mid] >>> 40 < parent) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
-        longBuffer.rewind();
-        buffer.asLongBuffer().put(longBuffer);
-        buffer.position(buffer.position() + longBuffer.capacity() * Long.BYTES);
+    /**
+     * The positions of a book numbered in the order they were added, in a primitive open-addressing table: each
+     * position is its 8 stone words and side on move in flat arrays, hashed and probed as in OffHeapCalcCache. A
+     * position given as words, such as the parent of one in the table, is looked up without making a Board.
+     */
+    static final class PositionIndex {
+        private final long[] stones;
+        private final int[] playersToMove;
+        // The position's number + 1 per slot, 0 for an empty slot; at most half full
+        private final int[] slots;
+        private final long[] key = new long[8];
+        private int size = 0;
+
+        PositionIndex(final int capacity) {
+            stones = new long[8 * capacity];
+            playersToMove = new int[capacity];
+            slots = new int[Integer.highestOneBit(Math.max(1, capacity)) * 4];
+        }
 
-        intBuffer.rewind();
-        buffer.asIntBuffer().put(intBuffer);
-        buffer.position(buffer.position() + intBuffer.capacity() * Integer.BYTES);
+        int size() {
+            return size;
+        }
 
-        return buffer.array();
-    }
+        int playerToMove(final int position) {
+            return playersToMove[position];
+        }
 
-    private static void addBoard(final SjoerdsGomokuPlayer.Board board, final List<Long> longList,
-            final List<Integer> intList) {
-        intList.add(board.playerToMove);
-        intList.add(board.moves);
+        void add(final SjoerdsGomokuPlayer.Board board) {
+            for (int word = 0; word < 4; word++) {
+                stones[8 * size + word] = board.playerStones(word);
+                stones[8 * size + 4 + word] = board.opponentStones(word);
+            }
+            playersToMove[size] = board.playerToMove;
+
+            System.arraycopy(stones, 8 * size, key, 0, 8);
+            slots[emptySlot(OffHeapCalcCache.hash(board.playerToMove, key))] = ++size;
+        }
 
-        for (int i = 0; i < 4; i++) longList.add(board.playerStones[i]);
-        for (int i = 0; i < 4; i++) longList.add(board.opponentStones[i]);
+        int find(final SjoerdsGomokuPlayer.Board board) {
+            for (int word = 0; word < 4; word++) {
+                key[word] = board.playerStones(word);
+                key[4 + word] = board.opponentStones(word);
+            }
+            return find(board.playerToMove, key);
+        }
+
+        /**
+         * The number of the position with these words, or -1 if it isn't in the table.
+         */
+        int find(final int playerToMove, final long[] words) {
+            final long hash = OffHeapCalcCache.hash(playerToMove, words);
+            for (int probe = 0; ; probe++) {
+                final int slot = (int) OffHeapCalcCache.slot(hash, probe, slots.length);
+                if (slots[slot] == 0) return -1;
+                if (matches(slots[slot] - 1, playerToMove, words)) return slots[slot] - 1;
+            }
+        }
+
+        /**
+         * The field of the last stone, if the position without it is in the table too, or -1. The parent's words
+         * are left in parent.
+         */
+        int parentField(final int position, final long[] parent) {
+            final int playerToMove = ~playersToMove[position];
+            // The last stone was played by the side not on move, the one on move in the parent
+            final int side = playerToMove == SjoerdsGomokuPlayer.Board.PLAYER ? 0 : 4;
+
+            System.arraycopy(stones, 8 * position, parent, 0, 8);
+            for (int word = 0; word < 4; word++) {
+                long bits = parent[side + word];
+                while (bits != 0) {
+                    final int lz = Long.numberOfLeadingZeros(bits);
+                    final long bit = Long.MIN_VALUE >>> lz;
+                    bits &= ~bit;
+
+                    parent[side + word] ^= bit;
+                    if (find(playerToMove, parent) >= 0) return word * 64 + lz;
+                    parent[side + word] ^= bit;
+                }
+            }
+
+            return -1;
+        }
+
+        private int emptySlot(final long hash) {
+            for (int probe = 0; ; probe++) {
+                final int slot = (int) OffHeapCalcCache.slot(hash, probe, slots.length);
+                if (slots[slot] == 0) return slot;
+            }
+        }
+
+        private boolean matches(final int position, final int playerToMove, final long[] words) {
+            if (playersToMove[position] != playerToMove) return false;
+            for (int word = 0; word < 8; word++) {
+                if (stones[8 * position + word] != words[word]) return false;
+            }
+            return true;
+        }
     }
 
-    private static void addCalcResult(final SjoerdsGomokuPlayer.CalcResult calcResult, final List<Integer> intList) {
-        intList.add(calcResult.ownScore);
-        intList.add(calcResult.moves.length);
+    private static int compareBoards(final SjoerdsGomokuPlayer.Board board1, final SjoerdsGomokuPlayer.Board board2) {
+        if (board1.moves != board2.moves) return Integer.compare(board1.moves, board2.moves);
+        if (board1.playerToMove != board2.playerToMove) return Integer.compare(board1.playerToMove, board2.playerToMove);
+        for (int i = 0; i < 4; i++) {
+            final int compare = Long.compareUnsigned(board1.playerStones(i), board2.playerStones(i));
+            if (compare != 0) return compare;
+        }
+        for (int i = 0; i < 4; i++) {
+            final int compare = Long.compareUnsigned(board1.opponentStones(i), board2.opponentStones(i));
+            if (compare != 0) return compare;
+        }
+        return 0;
+    }
 
-        for (int mv : calcResult.moves)
-            intList.add(mv);
+    private static void writeVarint(final ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeLong(final ByteArrayOutputStream out, final long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
     }
 }
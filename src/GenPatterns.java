@@ -28,40 +28,42 @@ public class GenPatterns {
 
     private static final SjoerdsGomokuPlayer.MoveConverter MOVE_CONVERTER = new SjoerdsGomokuPlayer.MoveConverter();
 
+    private static final int PLAYER = 0;
+    private static final int OPPONENT = 1;
+
     public static void main(String[] args) {
-        System.out.println(getPatterns().allPatterns.length);
+        System.out.println(getPatterns().size());
     }
 
-    public static SjoerdsGomokuPlayer.Patterns getPatterns() {
-        SjoerdsGomokuPlayer.Patterns patterns = new SjoerdsGomokuPlayer.Patterns();
-        SjoerdsGomokuPlayer.Pattern[] line1 = genPatterns(4);
-        SjoerdsGomokuPlayer.Pattern[] line2 = genPatterns(3);
-        SjoerdsGomokuPlayer.Pattern[] line3 = genPatterns(2);
-        SjoerdsGomokuPlayer.Pattern[] line4 = genPatterns(1);
+    public static Patterns getPatterns() {
+        Pattern[] line1 = genPatterns(4);
+        Pattern[] line2 = genPatterns(3);
+        Pattern[] line3 = genPatterns(2);
+        Pattern[] line4 = genPatterns(1);
 
-        SjoerdsGomokuPlayer.Pattern[] open2 = genOpenPatterns(2);
-        SjoerdsGomokuPlayer.Pattern[] open3 = genOpenPatterns(1);
+        Pattern[] open2 = genOpenPatterns(2);
+        Pattern[] open3 = genOpenPatterns(1);
 
-        patterns.allPatterns = Stream.of(line1, line2, line3, line4, open2, open3)
+        Pattern[] allPatterns = Stream.of(line1, line2, line3, line4, open2, open3)
                 .map(Arrays::stream)
                 .reduce(Stream::concat)
                 .orElseGet(Stream::empty)
-                .toArray(SjoerdsGomokuPlayer.Pattern[]::new);
+                .toArray(Pattern[]::new);
 
-        return patterns;
+        return Patterns.of(allPatterns);
     }
 
-    private static SjoerdsGomokuPlayer.Pattern[] genPatterns(int nrOfStonesToRemove) {
+    private static Pattern[] genPatterns(int nrOfStonesToRemove) {
         Stream<GenPattern> stream = Stream.of(HORIZ, VERTI, NWSE, NESW);
         return genPatterns(nrOfStonesToRemove, stream);
     }
 
-    private static SjoerdsGomokuPlayer.Pattern[] genOpenPatterns(int nrOfStonesToRemove) {
+    private static Pattern[] genOpenPatterns(int nrOfStonesToRemove) {
         Stream<GenPattern> stream = Stream.of(OPEN_HORIZ, OPEN_VERTI, OPEN_NWSE, OPEN_NESW);
         return genPatterns(nrOfStonesToRemove, stream);
     }
 
-    private static SjoerdsGomokuPlayer.Pattern[] genPatterns(int nrOfStonesToRemove, Stream<GenPattern> stream) {
+    private static Pattern[] genPatterns(int nrOfStonesToRemove, Stream<GenPattern> stream) {
         for (int i = 0; i < nrOfStonesToRemove; i++) {
             stream = stream.flatMap(GenPatterns::removeOneStone);
         }
@@ -72,7 +74,7 @@ public class GenPatterns {
                 .distinct()
                 .map(GenPattern::toPattern)
                 // Do not sort here. Results in a 64% increase in compressed size.
-                .toArray(SjoerdsGomokuPlayer.Pattern[]::new);
+                .toArray(Pattern[]::new);
     }
 
     private static Stream<GenPattern> removeOneStone(GenPattern parent) {
@@ -142,6 +144,70 @@ public class GenPatterns {
         return child;
     }
 
+    /**
+     * Reference matcher over the generated patterns. The player uses Lines, which derives the same matchInfo
+     * from per-line lookup tables; the test checks the two against each other.
+     */
+    static int[][] match(final SjoerdsGomokuPlayer.Board board, final Patterns patterns) {
+        int[][] matchInfo = new int[2][256];
+
+        final long nPS0 = ~board.playerStones(0);
+        final long nPS1 = ~board.playerStones(1);
+        final long nPS2 = ~board.playerStones(2);
+        final long nPS3 = ~board.playerStones(3);
+
+        final long nOS0 = ~board.opponentStones(0);
+        final long nOS1 = ~board.opponentStones(1);
+        final long nOS2 = ~board.opponentStones(2);
+        final long nOS3 = ~board.opponentStones(3);
+
+        final long occFld0 = board.playerStones(0) | board.opponentStones(0);
+        final long occFld1 = board.playerStones(1) | board.opponentStones(1);
+        final long occFld2 = board.playerStones(2) | board.opponentStones(2);
+        final long occFld3 = board.playerStones(3) | board.opponentStones(3);
+
+        final long[] emptyFields = patterns.emptyFields;
+        final long[] playerStones = patterns.playerStones;
+        final int[] moveOffsets = patterns.moveOffsets;
+        final int[] moves = patterns.moves;
+        final int[] moveTypes = patterns.moveTypes;
+        final int[] bucketOffsets = patterns.bucketOffsets;
+        final int[] playerInfo = matchInfo[PLAYER];
+        final int[] opponentInfo = matchInfo[OPPONENT];
+
+        // Only buckets anchored at an occupied field can match
+        final long[] occupied = {occFld0, occFld1, occFld2, occFld3};
+        for (int word = 0; word < 4; word++) {
+            long remaining = occupied[word];
+            while (remaining != 0) {
+                final int bit = Long.numberOfLeadingZeros(remaining);
+                remaining &= ~(Long.MIN_VALUE >>> bit);
+                final int anchor = 64 * word + bit;
+
+                for (int p = bucketOffsets[anchor], w = 4 * p; p < bucketOffsets[anchor + 1]; p++, w += 4) {
+                    if (((occFld0 & emptyFields[w]) | (occFld1 & emptyFields[w + 1]) |
+                            (occFld2 & emptyFields[w + 2]) | (occFld3 & emptyFields[w + 3])) != 0) {
+                        continue;
+                    }
+
+                    if (((nPS0 & playerStones[w]) | (nPS1 & playerStones[w + 1]) | (nPS2 & playerStones[w + 2]) |
+                            (nPS3 & playerStones[w + 3])) == 0) {
+                        for (int m = moveOffsets[p]; m < moveOffsets[p + 1]; m++)
+                            playerInfo[moves[m]] |= moveTypes[m];
+                    }
+
+                    if (((nOS0 & playerStones[w]) | (nOS1 & playerStones[w + 1]) | (nOS2 & playerStones[w + 2]) |
+                            (nOS3 & playerStones[w + 3])) == 0) {
+                        for (int m = moveOffsets[p]; m < moveOffsets[p + 1]; m++)
+                            opponentInfo[moves[m]] |= moveTypes[m];
+                    }
+                }
+            }
+        }
+
+        return matchInfo;
+    }
+
     private static class GenPattern {
         final Direction direction;
         final int height;
@@ -183,7 +249,7 @@ public class GenPatterns {
             return this;
         }
 
-        private SjoerdsGomokuPlayer.Pattern toPattern() {
+        private Pattern toPattern() {
             if (extraEmptyFields.size() > 0) {
                 if (moves.length + emptyFields.size() + extraEmptyFields.size() != 6)
                     throw new AssertionError();
@@ -202,8 +268,7 @@ public class GenPatterns {
                         board.apply(move);
                     });
 
-            long[] playerStones = new long[]{board.playerStones[0], board.playerStones[1], board.playerStones[2],
-                    board.playerStones[3]};
+            long[] playerStones = board.playerStones();
 
             int[] moves = new int[this.extraEmptyFields.size() + this.emptyFields.size()];
             int[] moveTypes = new int[this.extraEmptyFields.size() + this.emptyFields.size()];
@@ -229,9 +294,9 @@ public class GenPatterns {
                     });
 
             int total = 0;
-            for (long mv : board.playerStones)
+            for (long mv : playerStones)
                 total += Long.bitCount(mv);
-            for (long mv : emptyFieldsBoard.playerStones)
+            for (long mv : emptyFieldsBoard.playerStones())
                 total += Long.bitCount(mv);
             if (board.moves + emptyFieldsBoard.moves != total) {
                 throw new AssertionError();
@@ -239,11 +304,11 @@ public class GenPatterns {
 
             int noOverlapTotal = 0;
             for (int idx = 0; idx < 4; idx++) {
-                noOverlapTotal += Long.bitCount(board.playerStones[idx] | emptyFieldsBoard.playerStones[idx]);
+                noOverlapTotal += Long.bitCount(board.playerStones(idx) | emptyFieldsBoard.playerStones(idx));
             }
             if (total != noOverlapTotal) throw new AssertionError();
 
-            return new SjoerdsGomokuPlayer.Pattern(emptyFieldsBoard.playerStones, playerStones, moves, moveTypes);
+            return new Pattern(emptyFieldsBoard.playerStones(), playerStones, moves, moveTypes);
         }
 
         private int getMoveType(boolean isExtra, boolean hasExtra) {
@@ -299,4 +364,130 @@ public class GenPatterns {
             throw new AssertionError(stones);
         }
     }
+
+    /**
+     * All patterns, flattened into primitive arrays so the matcher walks memory sequentially. Pattern i uses words
+     * [4 * i, 4 * i + 4) of emptyFields and playerStones, and entries [moveOffsets[i], moveOffsets[i + 1]) of moves
+     * and moveTypes.
+     * <p>
+     * After bucketed(), the patterns are grouped by anchor: the first field that needs a stone. Patterns anchored at
+     * field f are [bucketOffsets[f], bucketOffsets[f + 1]), and can only match when f is occupied.
+     */
+    static final class Patterns {
+        final long[] emptyFields;
+        final long[] playerStones;
+        final int[] moveOffsets;
+        final int[] moves;
+        final int[] moveTypes;
+        final int[] bucketOffsets;
+
+        Patterns(final long[] emptyFields, final long[] playerStones, final int[] moveOffsets, final int[] moves,
+                final int[] moveTypes) {
+            this(emptyFields, playerStones, moveOffsets, moves, moveTypes, null);
+        }
+
+        private Patterns(final long[] emptyFields, final long[] playerStones, final int[] moveOffsets,
+                final int[] moves, final int[] moveTypes, final int[] bucketOffsets) {
+            this.emptyFields = emptyFields;
+            this.playerStones = playerStones;
+            this.moveOffsets = moveOffsets;
+            this.moves = moves;
+            this.moveTypes = moveTypes;
+            this.bucketOffsets = bucketOffsets;
+        }
+
+        /**
+         * Returns the same patterns reordered by anchor field.
+         */
+        Patterns bucketed() {
+            final int count = size();
+
+            final int[] bucketOffsets = new int[257];
+            final int[] anchors = new int[count];
+            for (int i = 0; i < count; i++) {
+                anchors[i] = anchor(i);
+                bucketOffsets[anchors[i] + 1]++;
+            }
+            for (int f = 0; f < 256; f++) {
+                bucketOffsets[f + 1] += bucketOffsets[f];
+            }
+
+            final int[] order = new int[count];
+            final int[] next = Arrays.copyOf(bucketOffsets, 256);
+            for (int i = 0; i < count; i++) {
+                order[next[anchors[i]]++] = i;
+            }
+
+            final long[] newEmptyFields = new long[emptyFields.length];
+            final long[] newPlayerStones = new long[playerStones.length];
+            final int[] newMoveOffsets = new int[count + 1];
+            final int[] newMoves = new int[moves.length];
+            final int[] newMoveTypes = new int[moveTypes.length];
+
+            for (int i = 0; i < count; i++) {
+                final int old = order[i];
+                final int moveCnt = moveOffsets[old + 1] - moveOffsets[old];
+                System.arraycopy(emptyFields, 4 * old, newEmptyFields, 4 * i, 4);
+                System.arraycopy(playerStones, 4 * old, newPlayerStones, 4 * i, 4);
+                System.arraycopy(moves, moveOffsets[old], newMoves, newMoveOffsets[i], moveCnt);
+                System.arraycopy(moveTypes, moveOffsets[old], newMoveTypes, newMoveOffsets[i], moveCnt);
+                newMoveOffsets[i + 1] = newMoveOffsets[i] + moveCnt;
+            }
+
+            return new Patterns(newEmptyFields, newPlayerStones, newMoveOffsets, newMoves, newMoveTypes,
+                    bucketOffsets);
+        }
+
+        private int anchor(final int i) {
+            for (int word = 0; word < 4; word++) {
+                if (playerStones[4 * i + word] != 0) {
+                    return 64 * word + Long.numberOfLeadingZeros(playerStones[4 * i + word]);
+                }
+            }
+            throw new AssertionError("Pattern without stones: " + i);
+        }
+
+        static Patterns of(final Pattern[] patterns) {
+            final int[] moveOffsets = new int[patterns.length + 1];
+            for (int i = 0; i < patterns.length; i++) {
+                moveOffsets[i + 1] = moveOffsets[i] + patterns[i].moves.length;
+            }
+
+            final long[] emptyFields = new long[4 * patterns.length];
+            final long[] playerStones = new long[4 * patterns.length];
+            final int[] moves = new int[moveOffsets[patterns.length]];
+            final int[] moveTypes = new int[moveOffsets[patterns.length]];
+
+            for (int i = 0; i < patterns.length; i++) {
+                System.arraycopy(patterns[i].emptyFields, 0, emptyFields, 4 * i, 4);
+                System.arraycopy(patterns[i].playerStones, 0, playerStones, 4 * i, 4);
+                System.arraycopy(patterns[i].moves, 0, moves, moveOffsets[i], patterns[i].moves.length);
+                System.arraycopy(patterns[i].moveTypes, 0, moveTypes, moveOffsets[i], patterns[i].moves.length);
+            }
+
+            return new Patterns(emptyFields, playerStones, moveOffsets, moves, moveTypes);
+        }
+
+        int size() {
+            return moveOffsets.length - 1;
+        }
+    }
+
+    /**
+     * One pattern: the fields that must be empty, those that must hold stones of one side, and the moves it gives
+     * that side with their types.
+     */
+    static final class Pattern {
+        final long[] emptyFields;
+        final long[] playerStones;
+        final int[] moves;
+        final int[] moveTypes;
+
+        Pattern(final long[] emptyFields, final long[] playerStones, final int[] moves, final int[] moveTypes) {
+            this.emptyFields = emptyFields;
+            this.playerStones = playerStones;
+            this.moves = moves;
+            this.moveTypes = moveTypes;
+        }
+    }
 }
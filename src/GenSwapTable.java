@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs decideSwitch on every opening, canonicalised by symmetry, with the opponent's and our stones on the given
+ * square of rows and columns, and prints the resulting SWAP_TABLE section for Data. The whole board is over 1M
+ * canonical openings and far more than fits in Data, hence the square; the player searches the openings outside it.
+ * <p>
+ * The serialized table is also written to the file of system property gomoku.swaptable, default swap-table.bin,
+ * which EncodeData reads instead of running this search again.
+ */
+public class GenSwapTable {
+    static final String FILE_PROPERTY = "gomoku.swaptable";
+    static final int DEFAULT_FROM = 5;
+    static final int DEFAULT_TO = 10;
+    static final int DEFAULT_DEPTH = 8;
+
+    private static final SjoerdsGomokuPlayer.IO IO =
+            new SjoerdsGomokuPlayer.IO(System.in, System.out, System.err, false);
+
+    public static void main(String[] args)
+            throws DataFormatException, IOException, InterruptedException, ExecutionException {
+        final int from = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FROM;
+        final int to = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TO;
+        final int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+
+        SjoerdsGomokuPlayer.SwapTable swapTable = getSwapTable(from, to, depth);
+        byte[] swapTableBytes = serializeSwapTable(swapTable);
+        String swapTableString = EncodeData.toUsableString(swapTableBytes);
+
+        SjoerdsGomokuPlayer.SwapTable verifySwapTable =
+                SjoerdsGomokuPlayer.DataReader.deserializeSwapTable(swapTableString, swapTableBytes.length);
+        verifyEquals(swapTable, verifySwapTable);
+
+        Files.write(file(), swapTableBytes);
+        System.out.println("Written " + file());
+
+        StringBuilder sb = new StringBuilder();
+        EncodeData.printData(sb, "SWAP_TABLE", swapTableBytes, swapTableString);
+        System.out.println(sb);
+    }
+
+    static Path file() {
+        return Paths.get(System.getProperty(FILE_PROPERTY, "swap-table.bin"));
+    }
+
+    /**
+     * The serialized table the last run wrote.
+     */
+    static byte[] readSwapTable() throws IOException {
+        if (!Files.exists(file())) {
+            throw new NoSuchFileException(file().toString(), null, "run GenSwapTable first to generate it");
+        }
+        return Files.readAllBytes(file());
+    }
+
+    static SjoerdsGomokuPlayer.SwapTable getSwapTable(final int from, final int to, final int depth)
+            throws InterruptedException, ExecutionException {
+        final int[] keys = canonicalOpenings(from, to);
+        System.out.println("Canonical openings: " + keys.length);
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        // decideSwitch reads its Timer for the time budget, so every thread gets its own
+        final ThreadLocal<SjoerdsGomokuPlayer.Timer> timers =
+                ThreadLocal.withInitial(() -> new SjoerdsGomokuPlayer.Timer(IO.dbgPrinter));
+        final ThreadLocal<SjoerdsGomokuPlayer.PatternMatchMoveGenerator> generators =
+                ThreadLocal.withInitial(() -> newGenerator(timers.get(), depth));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Short>> answers = new ArrayList<>();
+        for (int key : keys) {
+            answers.add(executor.submit(() -> answer(generators.get(), timers.get(), key)));
+        }
+
+        final long startTime = System.nanoTime();
+        final short[] values = new short[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = answers.get(i).get();
+            if ((i + 1) % 100 == 0) {
+                System.out.printf("%d/%d in %.1f s%n", i + 1, keys.length, (System.nanoTime() - startTime) / 1E9D);
+            }
+        }
+        executor.shutdown();
+
+        return new SjoerdsGomokuPlayer.SwapTable(keys, values);
+    }
+
+    private static SjoerdsGomokuPlayer.PatternMatchMoveGenerator newGenerator(final SjoerdsGomokuPlayer.Timer timer,
+            final int depth) {
+        SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen =
+                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, timer);
+        moveGen.maxNanos *= 60 * 300;
+        moveGen.maxDepth = depth;
+        // Compare both sides at the full depth, not at whatever the time of the move search allowed
+        moveGen.minSwitchNanos = moveGen.maxNanos;
+        return moveGen;
+    }
+
+    /**
+     * All keys of canonical openings with the three stones on rows and columns [from, to], sorted.
+     */
+    static int[] canonicalOpenings(final int from, final int to) {
+        final List<Integer> fields = new ArrayList<>();
+        for (int row = from; row <= to; row++) {
+            for (int col = from; col <= to; col++) {
+                fields.add(row * 16 + col);
+            }
+        }
+
+        final TreeSet<Integer> keys = new TreeSet<>();
+        for (int i = 0; i < fields.size(); i++) {
+            for (int j = i + 1; j < fields.size(); j++) {
+                for (int playerField : fields) {
+                    final int opponentField1 = fields.get(i);
+                    final int opponentField2 = fields.get(j);
+                    if (playerField == opponentField1 || playerField == opponentField2) continue;
+
+                    final int symmetry = SjoerdsGomokuPlayer.SwapTable.canonicalSymmetry(opponentField1,
+                            opponentField2, playerField);
+                    keys.add(SjoerdsGomokuPlayer.SwapTable.key(
+                            SjoerdsGomokuPlayer.SwapTable.transform(symmetry, opponentField1),
+                            SjoerdsGomokuPlayer.SwapTable.transform(symmetry, opponentField2),
+                            SjoerdsGomokuPlayer.SwapTable.transform(symmetry, playerField)));
+                }
+            }
+        }
+
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static short answer(final SjoerdsGomokuPlayer.PatternMatchMoveGenerator moveGen,
+            final SjoerdsGomokuPlayer.Timer timer, final int key) {
+        // A fresh cache per opening keeps memory bounded; the openings share few positions anyway
+        moveGen.calcCache = new HashMap<>();
+        timer.totalTime = 0;
+        timer.timerStart = System.nanoTime();
+
+        SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+        board.playerToMove = SjoerdsGomokuPlayer.Board.OPPONENT;
+        board.apply(IO.moveConverter.toMove(key >>> 16));
+        board.apply(IO.moveConverter.toMove(key & 0xFF));
+        board.apply(IO.moveConverter.toMove((key >>> 8) & 0xFF));
+
+        final SjoerdsGomokuPlayer.Move move = moveGen.decideSwitch(board);
+        return move == SjoerdsGomokuPlayer.Move.SWITCH ? SjoerdsGomokuPlayer.SwapTable.SWITCH :
+                (short) SjoerdsGomokuPlayer.MoveConverter.toFieldIdx(move);
+    }
+
+    static byte[] serializeSwapTable(final SjoerdsGomokuPlayer.SwapTable swapTable) {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                Integer.BYTES + swapTable.keys.length * (Integer.BYTES + Short.BYTES));
+
+        buffer.putInt(swapTable.keys.length);
+        for (int key : swapTable.keys)
+            buffer.putInt(key);
+        for (short answer : swapTable.answers)
+            buffer.putShort(answer);
+
+        return buffer.array();
+    }
+
+    private static void verifyEquals(final SjoerdsGomokuPlayer.SwapTable original,
+            final SjoerdsGomokuPlayer.SwapTable deserialized) {
+        if (!Arrays.equals(original.keys, deserialized.keys) || !Arrays.equals(original.answers, deserialized.answers)) {
+            throw new AssertionError("Verification failed: swap tables not equal");
+        }
+
+        System.out.println("Swap table deserialized correctly");
+    }
+}
@@ -10,11 +10,22 @@ class Judge {
     private final PlayerPipes player2Pipes;
     private final JudgeBoard board = new JudgeBoard();
     private final List<String> moves = new ArrayList<>();
+    private final boolean verbose;
+    // 1 or 2 for the player that won, 0 for a draw
+    private int winner = 0;
 
     Judge(final PlayerPipes player1Pipes, final PlayerPipes player2Pipes) {
+        this(player1Pipes, player2Pipes, true);
+    }
+
+    /**
+     * Without verbose, nothing is printed and the players' err pipes are not read, so they must log elsewhere.
+     */
+    Judge(final PlayerPipes player1Pipes, final PlayerPipes player2Pipes, final boolean verbose) {
         this.player1Pipes = player1Pipes;
         this.player2Pipes = player2Pipes;
-        JudgeDumper.sinkStreams(player1Pipes.err.readEnd, player2Pipes.err.readEnd);
+        this.verbose = verbose;
+        if (verbose) JudgeDumper.sinkStreams(player1Pipes.err.readEnd, player2Pipes.err.readEnd);
     }
 
     void play() {
@@ -39,11 +50,23 @@ class Judge {
             currentMover = currentMover == 0 ? 1 : 0;
         }
 
+        // Only a move can end the game, so whoever made the last one won it, if anyone did
+        if (board.gameResult != GameResult.DRAW) winner = currentMover == 0 ? 2 : 1;
+
         player1Pipes.in.writeEnd.println("Quit");
         player2Pipes.in.writeEnd.println("Quit");
 
-        JudgeDumper.printResult(board);
-        JudgeDumper.printAllMoves(moves);
+        if (verbose) {
+            JudgeDumper.printResult(board);
+            JudgeDumper.printAllMoves(moves);
+        }
+    }
+
+    /**
+     * After play(): 1 or 2 for the player that won, 0 for a draw.
+     */
+    int winner() {
+        return winner;
     }
 
     private void processMove(InputStream in, PrintStream out) {
@@ -51,7 +74,7 @@ class Judge {
         moves.add(move);
         board.move(move);
 
-        JudgeDumper.printMove(move, board);
+        if (verbose) JudgeDumper.printMove(move, board);
 
         out.println(move);
     }
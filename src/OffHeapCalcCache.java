@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A calcCache for book generation and analysis that keeps its entries outside the Java heap, so a full GC no longer
+ * has to walk millions of Boards and CalcResults. Set it as PatternMatchMoveGenerator.calcCache in place of the
+ * HashMap.
+ * <p>
+ * The entries live in fixed-size slots of an open-addressing table, in direct ByteBuffers or, given a file, in a
+ * memory-mapped file, in chunks of CHUNK_SLOTS slots as a ByteBuffer can't exceed 2GB. The table does not grow: when
+ * all PROBES slots for a board are taken, the one searched least deep is replaced. A CalcResult with more than
+ * MAX_MOVES moves is stored without its moves, which are generated again when needed.
+ * <p>
+ * The search changes CalcResults after getting them from the map, so the ones handed out recently are kept on the
+ * heap too, and written back to their slot when they drop out of that window or when the whole table is iterated.
+ * A deep search keeps positions open for longer than that window, so minimax puts each CalcResult back when it is
+ * done with it; otherwise the bestMove, moves and searchDepth it found last would be lost, and with them the book.
+ * <p>
+ * GenOpeningBook's workers each use one when system property gomoku.offheap holds the number of slots, of SLOT_BYTES
+ * bytes each. With gomoku.offheap.dir set as well, the table is mapped from a temporary file in that directory, so it
+ * can be larger than the memory.
+ */
+public class OffHeapCalcCache extends AbstractMap<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> {
+    static final String SLOTS_PROPERTY = "gomoku.offheap";
+    static final String DIR_PROPERTY = "gomoku.offheap.dir";
+    static final int MAX_MOVES = 16;
+    static final int PROBES = 8;
+
+    static final int SLOT_BYTES = 96;
+    private static final int CHUNK_SLOTS = 1 << 24;
+    private static final int RECENT_ENTRIES = 1 << 16;
+
+    private static final int USED = 0;
+    private static final int PLAYER_TO_MOVE = 1;
+    private static final int MOVE_COUNT = 2;
+    private static final int STONES = 4;
+    private static final int OWN_SCORE = 68;
+    private static final int EVALUATED = 72;
+    private static final int BEST_MOVE = 73;
+    private static final int SEARCH_DEPTH = 75;
+    private static final int MOVES_LENGTH = 76;
+    private static final int MOVES = 77;
+    private static final int NO_MOVES = 0xFF;
+
+    private final ByteBuffer[] chunks;
+    private final long slots;
+    private long size = 0;
+
+    private final LinkedHashMap<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> recent =
+            new LinkedHashMap<>(RECENT_ENTRIES * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> eldest) {
+                    if (size() <= RECENT_ENTRIES) return false;
+                    store(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+
+    /**
+     * A table in direct buffers of the given number of slots, rounded down to a power of two.
+     */
+    OffHeapCalcCache(final long slots) {
+        this.slots = Long.highestOneBit(slots);
+        chunks = new ByteBuffer[chunkCount(this.slots)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSlots(i) * SLOT_BYTES);
+        }
+    }
+
+    /**
+     * A table mapped from the file, which should be new or empty, of the given number of slots rounded down to a power
+     * of two.
+     */
+    OffHeapCalcCache(final long slots, final Path file) throws IOException {
+        this.slots = Long.highestOneBit(slots);
+        chunks = new ByteBuffer[chunkCount(this.slots)];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_SLOTS * SLOT_BYTES,
+                        (long) chunkSlots(i) * SLOT_BYTES);
+            }
+        }
+    }
+
+    /**
+     * The table system properties gomoku.offheap and gomoku.offheap.dir ask for, or null if they don't.
+     */
+    static OffHeapCalcCache fromProperties() throws IOException {
+        final String slots = System.getProperty(SLOTS_PROPERTY);
+        if (slots == null) return null;
+
+        final String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null) return new OffHeapCalcCache(Long.parseLong(slots));
+
+        final Path file = Files.createTempFile(Files.createDirectories(Paths.get(dir)), "calc-cache-", ".bin");
+        file.toFile().deleteOnExit();
+        return new OffHeapCalcCache(Long.parseLong(slots), file);
+    }
+
+    private static int chunkCount(final long slots) {
+        return (int) ((slots + CHUNK_SLOTS - 1) / CHUNK_SLOTS);
+    }
+
+    private int chunkSlots(final int chunk) {
+        return (int) Math.min(CHUNK_SLOTS, slots - (long) chunk * CHUNK_SLOTS);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return recent.containsKey(key) || find((SjoerdsGomokuPlayer.Board) key) >= 0;
+    }
+
+    @Override
+    public SjoerdsGomokuPlayer.CalcResult get(final Object key) {
+        final SjoerdsGomokuPlayer.CalcResult known = recent.get(key);
+        if (known != null) return known;
+
+        final SjoerdsGomokuPlayer.Board board = (SjoerdsGomokuPlayer.Board) key;
+        final long slot = find(board);
+        if (slot < 0) return null;
+
+        final SjoerdsGomokuPlayer.CalcResult calcResult = readCalcResult(slot);
+        recent.put(board, calcResult);
+        return calcResult;
+    }
+
+    @Override
+    public SjoerdsGomokuPlayer.CalcResult put(final SjoerdsGomokuPlayer.Board key,
+            final SjoerdsGomokuPlayer.CalcResult value) {
+        final SjoerdsGomokuPlayer.CalcResult previous = get(key);
+        store(key, value);
+        recent.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public Set<Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult>> entrySet() {
+        flush();
+
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult>> iterator() {
+                return new Iterator<>() {
+                    private long slot = nextUsed(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < slots;
+                    }
+
+                    @Override
+                    public Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> next() {
+                        if (slot >= slots) throw new NoSuchElementException();
+                        final Entry<SjoerdsGomokuPlayer.Board, SjoerdsGomokuPlayer.CalcResult> entry =
+                                new SimpleEntry<>(readBoard(slot), readCalcResult(slot));
+                        slot = nextUsed(slot + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OffHeapCalcCache.this.size();
+            }
+        };
+    }
+
+    /**
+     * Writes the CalcResults handed out recently back to their slots.
+     */
+    void flush() {
+        recent.forEach(this::store);
+    }
+
+    private long nextUsed(long slot) {
+        while (slot < slots && chunk(slot).get(offset(slot) + USED) == 0) slot++;
+        return slot;
+    }
+
+    private long find(final SjoerdsGomokuPlayer.Board board) {
+        final long hash = hash(board);
+        for (int probe = 0; probe < PROBES; probe++) {
+            final long slot = slot(hash, probe);
+            final ByteBuffer chunk = chunk(slot);
+            final int offset = offset(slot);
+            if (chunk.get(offset + USED) == 0) return -1;
+            if (sameBoard(chunk, offset, board)) return slot;
+        }
+        return -1;
+    }
+
+    private void store(final SjoerdsGomokuPlayer.Board board, final SjoerdsGomokuPlayer.CalcResult calcResult) {
+        final long hash = hash(board);
+        long target = -1;
+        int shallowest = Integer.MAX_VALUE;
+
+        for (int probe = 0; probe < PROBES; probe++) {
+            final long slot = slot(hash, probe);
+            final ByteBuffer chunk = chunk(slot);
+            final int offset = offset(slot);
+
+            if (chunk.get(offset + USED) == 0) {
+                size++;
+                target = slot;
+                break;
+            }
+            if (sameBoard(chunk, offset, board)) {
+                target = slot;
+                break;
+            }
+
+            final int depth = chunk.get(offset + SEARCH_DEPTH);
+            if (depth < shallowest) {
+                shallowest = depth;
+                target = slot;
+            }
+        }
+
+        write(target, board, calcResult);
+    }
+
+    private void write(final long slot, final SjoerdsGomokuPlayer.Board board,
+            final SjoerdsGomokuPlayer.CalcResult calcResult) {
+        final ByteBuffer chunk = chunk(slot);
+        final int offset = offset(slot);
+
+        chunk.put(offset + USED, (byte) 1);
+        chunk.put(offset + PLAYER_TO_MOVE, (byte) (board.playerToMove == SjoerdsGomokuPlayer.Board.PLAYER ? 0 : 1));
+        chunk.putShort(offset + MOVE_COUNT, (short) board.moves);
+        for (int i = 0; i < 4; i++) {
+            chunk.putLong(offset + STONES + i * Long.BYTES, board.playerStones(i));
+            chunk.putLong(offset + STONES + (4 + i) * Long.BYTES, board.opponentStones(i));
+        }
+
+        chunk.putInt(offset + OWN_SCORE, calcResult.ownScore);
+        chunk.put(offset + EVALUATED, (byte) (calcResult.evaluated ? 1 : 0));
+        chunk.putShort(offset + BEST_MOVE, (short) calcResult.bestMove);
+        chunk.put(offset + SEARCH_DEPTH, (byte) calcResult.searchDepth);
+
+        if (calcResult.moves == null || calcResult.moves.length > MAX_MOVES) {
+            chunk.put(offset + MOVES_LENGTH, (byte) NO_MOVES);
+        } else {
+            chunk.put(offset + MOVES_LENGTH, (byte) calcResult.moves.length);
+            for (int i = 0; i < calcResult.moves.length; i++) {
+                chunk.put(offset + MOVES + i, (byte) calcResult.moves[i]);
+            }
+        }
+    }
+
+    private SjoerdsGomokuPlayer.Board readBoard(final long slot) {
+        final ByteBuffer chunk = chunk(slot);
+        final int offset = offset(slot);
+
+        final SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+        board.playerToMove =
+                chunk.get(offset + PLAYER_TO_MOVE) == 0 ? SjoerdsGomokuPlayer.Board.PLAYER : SjoerdsGomokuPlayer.Board.OPPONENT;
+        board.moves = chunk.getShort(offset + MOVE_COUNT);
+        for (int i = 0; i < 4; i++) {
+            board.setPlayerStones(i, chunk.getLong(offset + STONES + i * Long.BYTES));
+            board.setOpponentStones(i, chunk.getLong(offset + STONES + (4 + i) * Long.BYTES));
+        }
+        return board;
+    }
+
+    private SjoerdsGomokuPlayer.CalcResult readCalcResult(final long slot) {
+        final ByteBuffer chunk = chunk(slot);
+        final int offset = offset(slot);
+
+        final SjoerdsGomokuPlayer.CalcResult calcResult = new SjoerdsGomokuPlayer.CalcResult();
+        calcResult.ownScore = chunk.getInt(offset + OWN_SCORE);
+        calcResult.evaluated = chunk.get(offset + EVALUATED) != 0;
+        calcResult.bestMove = chunk.getShort(offset + BEST_MOVE);
+        calcResult.searchDepth = chunk.get(offset + SEARCH_DEPTH);
+
+        final int length = chunk.get(offset + MOVES_LENGTH) & 0xFF;
+        if (length != NO_MOVES) {
+            calcResult.moves = new int[length];
+            for (int i = 0; i < length; i++) {
+                calcResult.moves[i] = chunk.get(offset + MOVES + i) & 0xFF;
+            }
+        }
+        return calcResult;
+    }
+
+    private static boolean sameBoard(final ByteBuffer chunk, final int offset, final SjoerdsGomokuPlayer.Board board) {
+        if (chunk.getShort(offset + MOVE_COUNT) != board.moves) return false;
+        if ((chunk.get(offset + PLAYER_TO_MOVE) == 0) != (board.playerToMove == SjoerdsGomokuPlayer.Board.PLAYER)) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (chunk.getLong(offset + STONES + i * Long.BYTES) != board.playerStones(i)) return false;
+            if (chunk.getLong(offset + STONES + (4 + i) * Long.BYTES) != board.opponentStones(i)) return false;
+        }
+        return true;
+    }
+
+    private static long hash(final SjoerdsGomokuPlayer.Board board) {
+        long hash = seed(board.playerToMove);
+        for (int i = 0; i < 4; i++) {
+            hash = mix(hash ^ board.playerStones(i));
+            hash = mix(hash ^ board.opponentStones(i));
+        }
+        return hash;
+    }
+
+    /**
+     * The same hash for a position given as its words, player words 0-3 and opponent words 4-7, for tables that
+     * keep positions without Boards.
+     */
+    static long hash(final int playerToMove, final long[] stones) {
+        long hash = seed(playerToMove);
+        for (int i = 0; i < 4; i++) {
+            hash = mix(hash ^ stones[i]);
+            hash = mix(hash ^ stones[4 + i]);
+        }
+        return hash;
+    }
+
+    private static long seed(final int playerToMove) {
+        return playerToMove == SjoerdsGomokuPlayer.Board.PLAYER ? 0x9E3779B97F4A7C15L : 0xC2B2AE3D27D4EB4FL;
+    }
+
+    /**
+     * MurmurHash3's finalizer. A multiplication alone only carries bits upwards, which would let changes to the top
+     * bits of two words cancel out.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Double hashing: the step between the probes comes from the other half of the hash, so boards that share their
+     * first slot don't share the rest, and the runs of taken slots linear probing builds up don't form. The step is
+     * odd and the slot count a power of two, so the probes never visit a slot twice.
+     */
+    private long slot(final long hash, final int probe) {
+        return slot(hash, probe, slots);
+    }
+
+    static long slot(final long hash, final int probe, final long slots) {
+        final long step = (Long.rotateLeft(hash, 32) | 1) & (slots - 1);
+        return (hash + probe * step) & (slots - 1);
+    }
+
+    private ByteBuffer chunk(final long slot) {
+        return chunks[(int) (slot / CHUNK_SLOTS)];
+    }
+
+    private static int offset(final long slot) {
+        return (int) (slot % CHUNK_SLOTS) * SLOT_BYTES;
+    }
+}
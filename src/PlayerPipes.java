@@ -13,7 +13,8 @@ class PlayerPipes {
 
     static class Pipe {
         PipedInputStream readEnd = new PipedInputStream();
-        PrintStream writeEnd = new PrintStream(new PipedOutputStream(readEnd));
+        // Flushing wakes up the reader; without it, a read waits for PipedInputStream's one second poll
+        PrintStream writeEnd = new PrintStream(new PipedOutputStream(readEnd), true);
 
         Pipe() throws IOException {
         }
@@ -1,5 +1,6 @@
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Random;
 import java.util.zip.DataFormatException;
 
 public class SjoerdsGomokuPlayerTest {
@@ -14,6 +15,9 @@ public class SjoerdsGomokuPlayerTest {
         toHex(move2);
         toHex(move3);
 
+        testLineMatching();
+        testSwapTable();
+        testOffHeapCalcCache();
         testMoves();
     }
 
@@ -24,6 +28,118 @@ public class SjoerdsGomokuPlayerTest {
         System.out.println();
     }
 
+    private static void testLineMatching() {
+        final GenPatterns.Patterns patterns = GenPatterns.getPatterns().bucketed();
+        final SjoerdsGomokuPlayer.Lines incremental = new SjoerdsGomokuPlayer.Lines();
+        final Random random = new Random(2020);
+
+        for (int game = 0; game < 50; game++) {
+            final SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+            final int stones = random.nextInt(200);
+
+            while (board.moves < stones) {
+                final SjoerdsGomokuPlayer.Move move = IO.moveConverter.toMove(random.nextInt(256));
+                if (!board.validMove(move)) continue;
+                board.apply(move);
+
+                incremental.syncTo(board);
+                final int[][] expected = GenPatterns.match(board, patterns);
+                if (!Arrays.deepEquals(expected, incremental.matchInfo)) {
+                    TestDumper.printBoard(board, "", "");
+                    throw new AssertionError("Test line matching NOK after " + board.moves + " moves");
+                }
+
+                final SjoerdsGomokuPlayer.Lines rebuilt = new SjoerdsGomokuPlayer.Lines();
+                rebuilt.syncTo(board);
+                if (rebuilt.ownScore != incremental.ownScore) {
+                    TestDumper.printBoard(board, "", "");
+                    throw new AssertionError("Test incremental ownScore NOK after " + board.moves + " moves: " +
+                            incremental.ownScore + " != " + rebuilt.ownScore);
+                }
+                for (int side = 0; side < 2; side++) {
+                    if (rebuilt.threatFields(side) != incremental.threatFields(side)) {
+                        TestDumper.printBoard(board, "", "");
+                        throw new AssertionError("Test incremental threatFields NOK after " + board.moves + " moves");
+                    }
+                }
+            }
+        }
+
+        System.out.println("Test OK: line matching");
+    }
+
+    private static void testSwapTable() throws DataFormatException {
+        final SjoerdsGomokuPlayer.SwapTable swapTable = SjoerdsGomokuPlayer.DataReader.getSwapTable();
+
+        for (int i = 0; i < swapTable.keys.length; i++) {
+            final int key = swapTable.keys[i];
+            final boolean switches = swapTable.answers[i] == SjoerdsGomokuPlayer.SwapTable.SWITCH;
+
+            for (int symmetry = 0; symmetry < 8; symmetry++) {
+                final SjoerdsGomokuPlayer.Board board = new SjoerdsGomokuPlayer.Board();
+                board.playerToMove = SjoerdsGomokuPlayer.Board.OPPONENT;
+                board.apply(IO.moveConverter.toMove(SjoerdsGomokuPlayer.SwapTable.transform(symmetry, key >>> 16)));
+                board.apply(IO.moveConverter.toMove(SjoerdsGomokuPlayer.SwapTable.transform(symmetry, key & 0xFF)));
+                board.apply(IO.moveConverter.toMove(
+                        SjoerdsGomokuPlayer.SwapTable.transform(symmetry, (key >>> 8) & 0xFF)));
+
+                final int answer = swapTable.lookup(board);
+                final boolean ok = switches ? answer == SjoerdsGomokuPlayer.SwapTable.SWITCH :
+                        answer >= 0 && board.validMove(IO.moveConverter.toMove(answer));
+                if (!ok) {
+                    TestDumper.printBoard(board, "", "");
+                    throw new AssertionError("Test swap table NOK for key " + Integer.toHexString(key) +
+                            ", symmetry " + symmetry + ": " + answer);
+                }
+            }
+        }
+
+        System.out.println("Test OK: swap table");
+    }
+
+    /**
+     * A search with an OffHeapCalcCache leaves the same results as one with a HashMap, also for the positions that
+     * dropped out of its window of recent entries while the search still changed them. The search is deep enough to
+     * go well past that window, on a table large enough that no entry is replaced.
+     */
+    private static void testOffHeapCalcCache() {
+        final SjoerdsGomokuPlayer.Board board = newBoard("Hh", "Hi", "Ij", "Gi", "Jh");
+        final SjoerdsGomokuPlayer.PatternMatchMoveGenerator onHeap = fixedDepthGenerator(10);
+        final SjoerdsGomokuPlayer.PatternMatchMoveGenerator offHeap = fixedDepthGenerator(10);
+        offHeap.calcCache = new OffHeapCalcCache(1 << 19);
+
+        onHeap.generateMove(board);
+        offHeap.generateMove(board);
+
+        final int[] compared = {0};
+        offHeap.calcCache.forEach((known, calcResult) -> {
+            final SjoerdsGomokuPlayer.CalcResult expected = onHeap.calcCache.get(known);
+            if (expected == null || expected.searchDepth != calcResult.searchDepth ||
+                    expected.bestMove != calcResult.bestMove || expected.ownScore != calcResult.ownScore ||
+                    !Arrays.equals(expected.moves, calcResult.moves)) {
+                TestDumper.printBoard(known, "", "");
+                throw new AssertionError("Test off-heap calcCache NOK after " + compared[0] + " positions");
+            }
+            compared[0]++;
+        });
+        if (compared[0] != onHeap.calcCache.size()) {
+            throw new AssertionError("Test off-heap calcCache NOK: " + compared[0] + " of " +
+                    onHeap.calcCache.size() + " positions");
+        }
+
+        System.out.println("Test OK: off-heap calcCache, " + compared[0] + " positions");
+    }
+
+    private static SjoerdsGomokuPlayer.PatternMatchMoveGenerator fixedDepthGenerator(final int depth) {
+        final SjoerdsGomokuPlayer.PatternMatchMoveGenerator generator =
+                new SjoerdsGomokuPlayer.PatternMatchMoveGenerator(IO.moveConverter, IO.dbgPrinter, IO.timer);
+        generator.maxDepth = depth;
+        generator.maxNanos = Long.MAX_VALUE / 4;
+        IO.timer.timerStart = System.nanoTime();
+        IO.timer.totalTime = 0;
+        return generator;
+    }
+
     private static void testMoves() throws DataFormatException {
         //testOpening();
 
@@ -34,9 +34,9 @@ class TestDumper {
             int fg = FG_GREY;
             int bg = BG_GREY;
 
-            if (matches(board.playerStones, move)) {
+            if (matches(board.playerStones(), move)) {
                 fg = FG_BLACK;
-            } else if (matches(board.opponentStones, move)) {
+            } else if (matches(board.opponentStones(), move)) {
                 fg = FG_WHITE;
             }
 
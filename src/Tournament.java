@@ -0,0 +1,409 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays a candidate build of the player against a baseline build, many games at once, to tell whether a change made
+ * it stronger. Each build is loaded in a class loader of its own, so both can be run in one JVM and neither sees the
+ * other's statics. The games go through Judge without printing anything.
+ * <p>
+ * Games come in pairs: a random opening of three stones, played once with either build starting. A pair is scored
+ * only when both its games are done, so neither the score nor the SPRT ever holds a game without its colour-swapped
+ * twin; a pair with a failed game is dropped. After every pair the score so far is printed: wins, draws and losses
+ * of the candidate, its Elo difference with a 95% confidence interval, and the log-likelihood ratio of an SPRT of
+ * ELO0 against ELO1. The tournament stops when that ratio passes one of its bounds, or after the given number of
+ * games, rounded up to whole pairs.
+ * <p>
+ * A build without SjoerdsGomokuPlayer.opening always plays its own default opening. Then all games start from that
+ * opening, which the other build is given too.
+ * <p>
+ * Usage: Tournament &lt;candidate classpath&gt; &lt;baseline classpath&gt; [games] [concurrency] [milliseconds per
+ * game], where - as a classpath is the one Tournament runs from. The time is each player's budget for the whole
+ * game; below the default of 4700 the games go faster, but test a different player than CodeCup sees.
+ * <p>
+ * The players' time is wall-clock time, so a game must not wait for a processor, or its search depth comes to depend
+ * on the load and biases the result. A game can keep THREADS_PER_GAME threads busy, so the default concurrency is
+ * the number of processors divided by that; a higher concurrency should leave room for it too.
+ */
+public class Tournament {
+    static final double ELO0 = 0;
+    static final double ELO1 = 10;
+    static final double ALPHA = 0.05;
+    static final double BETA = 0.05;
+
+    // Two players, each searching on a WarmUp or switch-flip thread beside its own
+    static final int THREADS_PER_GAME = 4;
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    // The candidate's result in a game, kept until the other game of its pair is done
+    private static final int WIN = 0;
+    private static final int DRAW = 1;
+    private static final int LOSS = 2;
+    private static final int FAILED = 3;
+
+    private final Engine candidate;
+    private final Engine baseline;
+    private final int games;
+    private final long maxNanos;
+    private final long seed = System.nanoTime();
+    // The opening of every game, if a build can only play its default one; null for random openings
+    private final int[] fixedOpening;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final Score score = new Score();
+    // Guarded by score, like the counts: per pair, the result of its game that finished first
+    private final Map<Integer, Integer> firstResults = new HashMap<>();
+    private int errors = 0;
+    private volatile boolean stopped = false;
+
+    Tournament(final Engine candidate, final Engine baseline, final int games, final long maxNanos)
+            throws ReflectiveOperationException {
+        this.candidate = candidate;
+        this.baseline = baseline;
+        this.games = games + games % 2;
+        this.maxNanos = maxNanos;
+
+        if (!baseline.setsOpening()) {
+            fixedOpening = baseline.defaultOpening();
+        } else if (!candidate.setsOpening()) {
+            fixedOpening = candidate.defaultOpening();
+        } else {
+            fixedOpening = null;
+        }
+        if (!candidate.setsOpening() && !Arrays.equals(candidate.defaultOpening(), fixedOpening)) {
+            throw new IllegalArgumentException("Neither build takes an opening, and their default openings differ");
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ReflectiveOperationException, InterruptedException {
+        final int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        final int concurrency = args.length > 3 ? Integer.parseInt(args[3]) :
+                Math.max(1, Runtime.getRuntime().availableProcessors() / THREADS_PER_GAME);
+        final long maxNanos = (args.length > 4 ? Long.parseLong(args[4]) : 4700) * 1_000_000L;
+
+        // The players must not learn from the games, nor from each other
+        System.clearProperty(SjoerdsGomokuPlayer.LearnedCache.PROPERTY);
+
+        final Tournament tournament = new Tournament(new Engine(args[0]), new Engine(args[1]), games, maxNanos);
+        tournament.run(concurrency);
+    }
+
+    void run(final int concurrency) throws InterruptedException {
+        System.out.printf("Up to %d games, %d at a time, %d ms per player per game, seed %d; SPRT elo0 %.0f " +
+                "elo1 %.0f, bounds [%.2f, %.2f]%n", games, concurrency, maxNanos / 1_000_000, seed, ELO0, ELO1,
+                lowerBound(), upperBound());
+        if (fixedOpening != null) {
+            System.out.println("A build takes no opening; every game starts from its default opening");
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            pool.execute(this::playGames);
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        synchronized (score) {
+            System.out.println("Final: " + report());
+        }
+    }
+
+    private void playGames() {
+        int game;
+        while (!stopped && (game = nextGame.getAndIncrement()) < games) {
+            // Both games of a pair get the same opening
+            final int[] opening = fixedOpening != null ? fixedOpening : opening(new Random(seed + game / 2));
+            final boolean candidateFirst = game % 2 == 0;
+
+            int result;
+            try {
+                final int winner =
+                        candidateFirst ? play(candidate, baseline, opening) : play(baseline, candidate, opening);
+                result = winner == 0 ? DRAW : (winner == 1) == candidateFirst ? WIN : LOSS;
+            } catch (RuntimeException | Error | ReflectiveOperationException | IOException | InterruptedException e) {
+                System.err.printf("Game %d failed: %s%n", game, e);
+                result = FAILED;
+            }
+
+            synchronized (score) {
+                final Integer other = firstResults.remove(game / 2);
+                if (other == null) {
+                    firstResults.put(game / 2, result);
+                } else {
+                    finishPair(result, other);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores a pair whose games are both done, then reports and checks the SPRT. Called holding score's lock.
+     */
+    private void finishPair(final int result1, final int result2) {
+        if (result1 == FAILED || result2 == FAILED) {
+            errors++;
+            return;
+        }
+
+        for (int result : new int[]{result1, result2}) {
+            if (result == WIN) {
+                score.wins++;
+            } else if (result == DRAW) {
+                score.draws++;
+            } else {
+                score.losses++;
+            }
+        }
+        System.out.println(report());
+
+        final double llr = score.llr(ELO0, ELO1);
+        if (!stopped && (llr <= lowerBound() || llr >= upperBound())) {
+            stopped = true;
+            System.out.printf("SPRT: %s at LLR %.2f%n", llr >= upperBound() ? "H1 accepted, the candidate " +
+                    "is stronger" : "H0 accepted, the candidate is not stronger", llr);
+        }
+    }
+
+    /**
+     * Plays one game, first against second. Returns the winner as Judge.winner() does.
+     */
+    private int play(final Engine first, final Engine second, final int[] opening)
+            throws IOException, ReflectiveOperationException, InterruptedException {
+        final PlayerPipes player1Pipes = new PlayerPipes();
+        final PlayerPipes player2Pipes = new PlayerPipes();
+
+        final Thread thread1 = first.newPlayer(player1Pipes, opening, maxNanos);
+        final Thread thread2 = second.newPlayer(player2Pipes, opening, maxNanos);
+        thread1.start();
+        thread2.start();
+
+        final Judge judge = new Judge(player1Pipes, player2Pipes, false);
+        try {
+            judge.play();
+        } finally {
+            // Ends a player still waiting for a move when the game broke off
+            player1Pipes.in.writeEnd.close();
+            player2Pipes.in.writeEnd.close();
+        }
+
+        thread1.join();
+        thread2.join();
+        return judge.winner();
+    }
+
+    /**
+     * Three different fields in the centre of the board, where WarmUp plays its random stones too.
+     */
+    private static int[] opening(final Random random) {
+        final int[] opening = new int[3];
+        for (int i = 0; i < 3; i++) {
+            boolean taken;
+            do {
+                opening[i] = (4 + random.nextInt(8)) * 16 + 4 + random.nextInt(8);
+                taken = false;
+                for (int j = 0; j < i; j++) taken |= opening[j] == opening[i];
+            } while (taken);
+        }
+        return opening;
+    }
+
+    private String report() {
+        final double[] interval = score.eloInterval();
+        return String.format("Games %d: +%d =%d -%d, Elo %+.1f [%+.1f, %+.1f], LLR %.2f%s", score.games(),
+                score.wins, score.draws, score.losses, score.elo(), interval[0], interval[1],
+                score.llr(ELO0, ELO1), errors > 0 ? ", pairs failed " + errors : "");
+    }
+
+    private static double lowerBound() {
+        return Math.log(BETA / (1 - ALPHA));
+    }
+
+    private static double upperBound() {
+        return Math.log((1 - BETA) / ALPHA);
+    }
+
+    /**
+     * The candidate's results. Elo follows from the mean score per game under the logistic model; its interval and
+     * the SPRT use the variance of the scores the games actually had, so draws narrow them as they should.
+     */
+    static final class Score {
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+
+        int games() {
+            return wins + draws + losses;
+        }
+
+        double mean() {
+            return (wins + draws / 2.0) / games();
+        }
+
+        double variance() {
+            final double mean = mean();
+            return (wins * Math.pow(1 - mean, 2) + draws * Math.pow(0.5 - mean, 2) + losses * Math.pow(mean, 2)) /
+                    games();
+        }
+
+        double elo() {
+            return elo(mean());
+        }
+
+        /**
+         * The 95% confidence interval of elo().
+         */
+        double[] eloInterval() {
+            final double margin = 1.96 * Math.sqrt(variance() / games());
+            return new double[]{elo(mean() - margin), elo(mean() + margin)};
+        }
+
+        /**
+         * The log-likelihood ratio of elo1 against elo0, in the normal approximation of the generalized SPRT. 0
+         * while the scores don't vary yet.
+         */
+        double llr(final double elo0, final double elo1) {
+            final double variance = variance();
+            if (games() == 0 || variance == 0) return 0;
+
+            final double score0 = expectedScore(elo0);
+            final double score1 = expectedScore(elo1);
+            return games() * (score1 - score0) * (2 * mean() - score0 - score1) / (2 * variance);
+        }
+
+        static double elo(final double score) {
+            if (score <= 0) return Double.NEGATIVE_INFINITY;
+            if (score >= 1) return Double.POSITIVE_INFINITY;
+            return 400 * Math.log10(score / (1 - score));
+        }
+
+        static double expectedScore(final double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+    }
+
+    /**
+     * One build of the player, in a class loader of its own, with reflective access to what a game needs. A build
+     * without SjoerdsGomokuPlayer.opening plays Move.OPENING in every game.
+     */
+    static final class Engine {
+        private final Constructor<?> newIO;
+        private final Constructor<?> newPlayer;
+        private final Method play;
+        private final Field moveConverter;
+        private final Method toMove;
+        private final Method toFieldIdx;
+        private final Class<?> moveClass;
+        private final Field defaultOpening;
+        // Null in a build whose opening can't be set
+        private final Field opening;
+        private final Field moveGenerator;
+        private final Field maxNanos;
+
+        Engine(final String classPath) throws IOException, ReflectiveOperationException {
+            final List<URL> urls = new ArrayList<>();
+            for (String entry : (classPath.equals("-") ? System.getProperty("java.class.path") : classPath)
+                    .split(File.pathSeparator)) {
+                urls.add(Paths.get(entry).toUri().toURL());
+            }
+            final ClassLoader loader =
+                    new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+
+            final Class<?> playerClass = loader.loadClass("SjoerdsGomokuPlayer");
+            final Class<?> ioClass = loader.loadClass("SjoerdsGomokuPlayer$IO");
+            moveClass = loader.loadClass("SjoerdsGomokuPlayer$Move");
+
+            newIO = accessible(
+                    ioClass.getDeclaredConstructor(InputStream.class, PrintStream.class, PrintStream.class,
+                            boolean.class));
+            newPlayer = accessible(playerClass.getDeclaredConstructor(ioClass));
+            play = accessible(playerClass.getDeclaredMethod("play"));
+            moveConverter = accessible(ioClass.getDeclaredField("moveConverter"));
+            toMove = accessible(moveConverter.getType().getDeclaredMethod("toMove", int.class));
+            toFieldIdx = accessible(moveConverter.getType().getDeclaredMethod("toFieldIdx", moveClass));
+            defaultOpening = accessible(moveClass.getDeclaredField("OPENING"));
+            opening = optionalField(playerClass, "opening");
+            moveGenerator = accessible(playerClass.getDeclaredField("moveGenerator"));
+            maxNanos = accessible(moveGenerator.getType().getDeclaredField("maxNanos"));
+        }
+
+        /**
+         * A not yet started thread playing one game on the pipes. Its debug output is dropped.
+         */
+        Thread newPlayer(final PlayerPipes pipes, final int[] openingFields, final long maxNanos)
+                throws ReflectiveOperationException {
+            final Object io = newIO.newInstance(pipes.in.readEnd, pipes.out.writeEnd, NO_OUTPUT, false);
+            final Object player = newPlayer.newInstance(io);
+
+            if (opening != null) {
+                final Object moves = Array.newInstance(moveClass, openingFields.length);
+                for (int i = 0; i < openingFields.length; i++) {
+                    Array.set(moves, i, toMove.invoke(moveConverter.get(io), openingFields[i]));
+                }
+                opening.set(player, moves);
+            }
+            this.maxNanos.setLong(moveGenerator.get(player), maxNanos);
+
+            final Thread thread = new Thread(() -> {
+                try {
+                    play.invoke(player);
+                } catch (ReflectiveOperationException e) {
+                    // A broken off game; the judge reports it
+                } finally {
+                    pipes.out.writeEnd.close();
+                }
+            });
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        boolean setsOpening() {
+            return opening != null;
+        }
+
+        /**
+         * The fields of Move.OPENING, the opening the build plays unless told otherwise.
+         */
+        int[] defaultOpening() throws ReflectiveOperationException {
+            final Object moves = defaultOpening.get(null);
+            final int[] fields = new int[Array.getLength(moves)];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = (int) toFieldIdx.invoke(null, Array.get(moves, i));
+            }
+            return fields;
+        }
+
+        private static Field optionalField(final Class<?> owner, final String name) {
+            try {
+                return accessible(owner.getDeclaredField(name));
+            } catch (NoSuchFieldException e) {
+                return null;
+            }
+        }
+
+        private static <T extends AccessibleObject> T accessible(final T object) {
+            object.setAccessible(true);
+            return object;
+        }
+    }
+}